@@ -0,0 +1,69 @@
+package com.rag.ragbackend.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * @Description 基准测试用的样本数据：固定种子生成，中英混排文本与随机向量，每次运行结果可比
+ * @Version 1.0.0
+ * @Date 2026-10-19 01:30
+ * @Author by zjh
+ */
+public final class SampleData {
+
+    private static final String[] ZH = {
+            "检索增强生成把知识库中的相关片段拼进提示词。",
+            "向量检索按余弦相似度召回候选片段，再按阈值截断。",
+            "上传的文档先抽取文本，再按句子边界切分成块。",
+            "设备型号 RX-2048 在固件 3.1.4 之后支持断点续传。",
+            "错误码 E1027 表示鉴权失败，请检查令牌是否过期。",
+            "每个片段都带有文档编号、租户和标签等元数据。",
+    };
+
+    private static final String[] EN = {
+            "The embedding model maps each chunk to a dense vector.",
+            "Hybrid retrieval fuses lexical and semantic rankings.",
+            "Streaming responses are coalesced into small frames.",
+            "Idle tasks are evicted after the configured time to live.",
+    };
+
+    private SampleData() {
+    }
+
+    /** 约 chars 个字符的中英混排文本，每 8 句一段 */
+    public static String text(int chars, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        StringBuilder sb = new StringBuilder(chars + 64);
+        int sentences = 0;
+        while (sb.length() < chars) {
+            sb.append(random.nextInt(3) == 0 ? EN[random.nextInt(EN.length)] + " " : ZH[random.nextInt(ZH.length)]);
+            if (++sentences % 8 == 0) {
+                sb.append("\n\n");
+            }
+        }
+        return sb.toString();
+    }
+
+    /** 只含 ASCII 的英文文本（PDF 标准字体不含中文字形） */
+    public static List<String> asciiLines(int lines, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<String> out = new ArrayList<>(lines);
+        for (int i = 0; i < lines; i++) {
+            out.add(EN[random.nextInt(EN.length)]);
+        }
+        return out;
+    }
+
+    /** count 个 dimensions 维的随机向量，分量在 [-1, 1) */
+    public static float[][] vectors(int count, int dimensions, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        float[][] out = new float[count][dimensions];
+        for (float[] vector : out) {
+            for (int i = 0; i < dimensions; i++) {
+                vector[i] = (float) (random.nextDouble() * 2 - 1);
+            }
+        }
+        return out;
+    }
+}
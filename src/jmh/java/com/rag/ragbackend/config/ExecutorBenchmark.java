@@ -0,0 +1,90 @@
+package com.rag.ragbackend.config;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @Description bizExecutor 两种模式对比：平台线程池（与 ThreadPoolConfig 相同的核心/最大线程数、队列和 CallerRuns 拒绝策略）
+ * 与虚拟线程（spring.threads.virtual.enabled=true）。每次提交 fanOut 个阻塞 blockMillis 的任务并等待全部完成，
+ * 模拟一批请求同时等待 Redis / Chroma / Ollama 的响应
+ * @Version 1.0.0
+ * @Date 2026-10-19 01:30
+ * @Author by zjh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExecutorBenchmark {
+
+    /** 同时提交的任务数 */
+    @Param({"64", "1024"})
+    public int fanOut;
+
+    /** 每个任务阻塞的时间（毫秒） */
+    @Param({"1", "10"})
+    public int blockMillis;
+
+    private ThreadPoolTaskExecutor pool;
+    private SimpleAsyncTaskExecutor virtual;
+
+    @Setup
+    public void setup() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        pool = new ThreadPoolTaskExecutor();
+        pool.setCorePoolSize(processors);
+        pool.setMaxPoolSize(processors * 2);
+        pool.setQueueCapacity(1000);
+        pool.setThreadNamePrefix("bench-pool-");
+        pool.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        pool.initialize();
+
+        virtual = new SimpleAsyncTaskExecutor("bench-virtual-");
+        virtual.setVirtualThreads(true);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+        virtual.close();
+    }
+
+    @Benchmark
+    public void platformPool() {
+        run(pool);
+    }
+
+    @Benchmark
+    public void virtualThreads() {
+        run(virtual);
+    }
+
+    private void run(Executor executor) {
+        long nanos = TimeUnit.MILLISECONDS.toNanos(blockMillis);
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[fanOut];
+        for (int i = 0; i < fanOut; i++) {
+            futures[i] = CompletableFuture.runAsync(() -> LockSupport.parkNanos(nanos), executor);
+        }
+        CompletableFuture.allOf(futures).join();
+    }
+}
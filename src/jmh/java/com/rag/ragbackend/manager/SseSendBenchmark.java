@@ -0,0 +1,82 @@
+package com.rag.ragbackend.manager;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rag.ragbackend.config.SseConfig;
+import com.rag.ragbackend.pojo.resp.SseMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description SseEmitterManager.send 吞吐：8 个线程写同一个任务（单任务锁竞争）与各写各的任务（只竞争注册表和全局计数）。
+ * 覆盖序列化、分配序号、写入环形缓冲与超限淘汰；没有客户端连接（SseEmitter 需要 Servlet 容器），不含 socket 写出。
+ * 跨实例转发关闭，不依赖 Redis
+ * @Version 1.0.0
+ * @Date 2026-10-19 01:30
+ * @Author by zjh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class SseSendBenchmark {
+
+    private static final SseMessage FRAME = SseMessage.delta("检索增强生成把知识库中的相关片段拼进提示词。");
+
+    private SseEmitterManager manager;
+    private String sharedTask;
+
+    @State(Scope.Thread)
+    public static class OwnTask {
+        String taskId;
+
+        @Setup
+        public void setup(SseSendBenchmark benchmark) {
+            taskId = UUID.randomUUID().toString();
+            benchmark.manager.create(taskId);
+        }
+    }
+
+    @Setup
+    public void setup() {
+        SseConfig sseConfig = new SseConfig();
+        ObjectMapper objectMapper = new ObjectMapper();
+        SseRelay relay = new SseRelay(sseConfig, null, objectMapper, Runnable::run);
+        manager = new SseEmitterManager(sseConfig, objectMapper, relay,
+                new RagMetrics(new SimpleMeterRegistry(), "bench-chat", "bench-embed"));
+        manager.start();
+        sharedTask = UUID.randomUUID().toString();
+        manager.create(sharedTask);
+    }
+
+    @TearDown
+    public void tearDown() {
+        manager.stop();
+    }
+
+    @Benchmark
+    public void sharedTask() {
+        manager.send(sharedTask, FRAME);
+    }
+
+    @Benchmark
+    public void taskPerThread(OwnTask own) {
+        manager.send(own.taskId, FRAME);
+    }
+}
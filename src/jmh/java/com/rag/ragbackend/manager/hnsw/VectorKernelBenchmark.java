@@ -0,0 +1,123 @@
+package com.rag.ragbackend.manager.hnsw;
+
+import com.rag.ragbackend.bench.SampleData;
+import com.rag.ragbackend.utils.VectorUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description 相似度与 top-k 内核：cosine（每次求模）与预归一化后的 dot 对比，
+ * 以及从 N 个候选中选 top-k：ScoredHeap（平行数组有界小顶堆）、全量排序、装箱的 PriorityQueue
+ * @Version 1.0.0
+ * @Date 2026-10-19 01:30
+ * @Author by zjh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VectorKernelBenchmark {
+
+    private static final int DIMENSIONS = 1024;
+    private static final int K = 10;
+
+    /** 候选数 */
+    @Param({"10000", "100000"})
+    public int candidates;
+
+    private float[] query;
+    private float[] normalizedQuery;
+    private float[][] vectors;
+    private float[][] normalized;
+    private float[] scores;
+
+    @Setup
+    public void setup() {
+        query = SampleData.vectors(1, DIMENSIONS, 7)[0];
+        normalizedQuery = VectorUtil.normalize(query);
+        // 相似度内核只用前 1000 个向量，避免 100000 × 1024 的数据量全部落在内存带宽上
+        vectors = SampleData.vectors(1000, DIMENSIONS, 11);
+        normalized = new float[vectors.length][];
+        for (int i = 0; i < vectors.length; i++) {
+            normalized[i] = VectorUtil.normalize(vectors[i]);
+        }
+        scores = SampleData.vectors(1, candidates, 13)[0];
+    }
+
+    @Benchmark
+    public float cosine() {
+        float sum = 0;
+        for (float[] v : vectors) {
+            sum += VectorUtil.cosine(query, v);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public float dotNormalized() {
+        float sum = 0;
+        for (float[] v : normalized) {
+            sum += VectorUtil.dot(normalizedQuery, v);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public ScoredHeap.Scored topKHeap() {
+        ScoredHeap heap = new ScoredHeap(K + 1, false);
+        for (int i = 0; i < scores.length; i++) {
+            if (heap.size() < K || scores[i] > heap.topScore()) {
+                heap.push(i, scores[i]);
+                if (heap.size() > K) {
+                    heap.pop();
+                }
+            }
+        }
+        return heap.drainDescending();
+    }
+
+    @Benchmark
+    public int[] topKSort() {
+        Integer[] order = new Integer[scores.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Float.compare(scores[b], scores[a]));
+        int[] top = new int[K];
+        for (int i = 0; i < K; i++) {
+            top[i] = order[i];
+        }
+        return top;
+    }
+
+    @Benchmark
+    public int[] topKPriorityQueue() {
+        PriorityQueue<Integer> queue = new PriorityQueue<>(K + 1, (a, b) -> Float.compare(scores[a], scores[b]));
+        for (int i = 0; i < scores.length; i++) {
+            queue.offer(i);
+            if (queue.size() > K) {
+                queue.poll();
+            }
+        }
+        int[] top = new int[queue.size()];
+        for (int i = top.length - 1; i >= 0; i--) {
+            top[i] = queue.poll();
+        }
+        return top;
+    }
+}
@@ -0,0 +1,110 @@
+package com.rag.ragbackend.service.impl;
+
+import com.rag.ragbackend.bench.SampleData;
+import com.rag.ragbackend.utils.VectorUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.embedding.Embedding;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description 向量结果的处理成本：当前 EmbeddingServiceImpl 直接使用模型返回的 float[]（只做维度校验），
+ * 对比早期 extractVector 的两条路径——float[] 逐个装箱成 List&lt;Double&gt;，以及按候选 getter 名反射取值后再装箱，
+ * 另附下游常用的 List&lt;Double&gt; → float[] 拆箱与归一化，量化装箱与反射在每次检索、每个 chunk 上的代价
+ * @Version 1.0.0
+ * @Date 2026-10-19 01:30
+ * @Author by zjh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmbeddingVectorBenchmark {
+
+    private static final String[] CANDIDATE_GETTERS = {
+            "getValues", "getValue", "getEmbedding", "getEmbeddings", "getOutput", "getVector", "getData"
+    };
+
+    /** nomic-embed-text 为 768 维 */
+    @Param({"768", "1024"})
+    public int dimensions;
+
+    private float[] vector;
+    private Embedding response;
+    private List<Double> boxed;
+
+    @Setup
+    public void setup() {
+        vector = SampleData.vectors(1, dimensions, 3)[0];
+        response = new Embedding(vector, 0);
+        boxed = toList(vector);
+    }
+
+    @Benchmark
+    public float[] primitive() {
+        float[] out = vector;
+        if (out.length != dimensions) {
+            throw new IllegalStateException();
+        }
+        return out;
+    }
+
+    @Benchmark
+    public List<Double> boxedList() {
+        return toList(vector);
+    }
+
+    @Benchmark
+    public List<Double> reflectiveGetter() throws Exception {
+        for (String getter : CANDIDATE_GETTERS) {
+            Method method;
+            try {
+                method = response.getClass().getMethod(getter);
+            } catch (NoSuchMethodException ignored) {
+                continue;
+            }
+            Object value = method.invoke(response);
+            if (value instanceof float[] array) {
+                return toList(array);
+            }
+        }
+        throw new IllegalStateException("no vector getter");
+    }
+
+    @Benchmark
+    public float[] unboxList() {
+        float[] out = new float[boxed.size()];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = boxed.get(i).floatValue();
+        }
+        return out;
+    }
+
+    @Benchmark
+    public float[] normalize() {
+        return VectorUtil.normalize(vector);
+    }
+
+    private static List<Double> toList(float[] array) {
+        List<Double> list = new ArrayList<>(array.length);
+        for (float v : array) {
+            list.add((double) v);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,77 @@
+package com.rag.ragbackend.service.impl;
+
+import com.rag.ragbackend.bench.SampleData;
+import com.rag.ragbackend.manager.ConversationMemory;
+import com.rag.ragbackend.pojo.dto.ConversationTurn;
+import com.rag.ragbackend.utils.ExtractiveCompressor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description prompt 组装：检索到的 chunk 直接拼接、抽取式压缩到 token 预算，以及带多轮历史的完整组装
+ * （与请求路径一致：ExtractiveCompressor + History.render + ChromaRAGServiceImpl.buildPrompt）
+ * @Version 1.0.0
+ * @Date 2026-10-19 01:30
+ * @Author by zjh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PromptAssemblyBenchmark {
+
+    private static final String QUESTION = "设备型号 RX-2048 出现错误码 E1027 时怎么处理？";
+
+    /** 检索返回的 chunk 数 */
+    @Param({"5", "20"})
+    public int chunks;
+
+    private List<String> texts;
+    private ConversationMemory.History history;
+
+    @Setup
+    public void setup() {
+        texts = new ArrayList<>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            texts.add(SampleData.text(600, i));
+        }
+        List<ConversationTurn> turns = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            turns.add(new ConversationTurn(SampleData.text(40, 100 + i), SampleData.text(300, 200 + i)));
+        }
+        history = new ConversationMemory.History(SampleData.text(200, 300), turns);
+    }
+
+    @Benchmark
+    public String rawConcat() {
+        return ChromaRAGServiceImpl.buildPrompt(String.join("\n", texts), ConversationMemory.History.EMPTY,
+                QUESTION, 512);
+    }
+
+    @Benchmark
+    public String compressed() {
+        return ChromaRAGServiceImpl.buildPrompt(ExtractiveCompressor.compress(QUESTION, texts, 512),
+                ConversationMemory.History.EMPTY, QUESTION, 512);
+    }
+
+    @Benchmark
+    public String compressedWithHistory() {
+        return ChromaRAGServiceImpl.buildPrompt(ExtractiveCompressor.compress(QUESTION, texts, 512),
+                history, QUESTION, 512);
+    }
+}
@@ -0,0 +1,78 @@
+package com.rag.ragbackend.utils;
+
+import com.rag.ragbackend.bench.SampleData;
+import com.rag.ragbackend.utils.chunk.Chunker;
+import com.rag.ragbackend.utils.chunk.FixedLengthChunker;
+import com.rag.ragbackend.utils.chunk.SentenceChunker;
+import com.rag.ragbackend.utils.chunk.TextChunk;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description 切块：旧的 ChunkUtil.split（整篇复制、按字符数硬切）与入库实际使用的 Chunker 对比，
+ * 关注每篇文档的耗时与分配量（-prof gc 的 gc.alloc.rate.norm）
+ * @Version 1.0.0
+ * @Date 2026-10-19 01:30
+ * @Author by zjh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChunkingBenchmark {
+
+    @Param({"65536", "1048576"})
+    public int chars;
+
+    private String text;
+    private Chunker sentence;
+    private Chunker fixed;
+
+    @Setup
+    public void setup() {
+        text = SampleData.text(chars, 42);
+        sentence = new SentenceChunker(256, 32);
+        fixed = new FixedLengthChunker(500);
+    }
+
+    @SuppressWarnings("deprecation")
+    @Benchmark
+    public void chunkUtilSplit(Blackhole bh) {
+        for (String chunk : ChunkUtil.split(text, 500)) {
+            bh.consume(chunk);
+        }
+    }
+
+    @Benchmark
+    public void fixedLengthChunker(Blackhole bh) {
+        consume(fixed.chunks(text), bh);
+    }
+
+    @Benchmark
+    public void sentenceChunker(Blackhole bh) {
+        consume(sentence.chunks(text), bh);
+    }
+
+    private static void consume(Iterator<TextChunk> chunks, Blackhole bh) {
+        while (chunks.hasNext()) {
+            TextChunk chunk = chunks.next();
+            // 入库时每个 chunk 都会转成 String 送去向量化，这里一并计入
+            bh.consume(chunk.toString());
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.rag.ragbackend.utils;
+
+import com.rag.ragbackend.bench.SampleData;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description 文本抽取：整篇读取（extractPdf）与按页区间流式读取（openPdf，文件 / 输入流两种来源）对比，
+ * 以及 txt 的整篇读取与分段读取。样本 PDF 在 Setup 中用 PDFBox 生成，不依赖外部文件
+ * @Version 1.0.0
+ * @Date 2026-10-19 01:30
+ * @Author by zjh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TextExtractorBenchmark {
+
+    private static final int LINES_PER_PAGE = 45;
+    private static final long MAX_MAIN_MEMORY = 16L * 1024 * 1024;
+
+    @Param({"20", "200"})
+    public int pages;
+
+    private File pdf;
+    private byte[] pdfBytes;
+    private byte[] textBytes;
+
+    @Setup
+    public void setup() throws IOException {
+        pdf = File.createTempFile("jmh-sample-", ".pdf");
+        List<String> lines = SampleData.asciiLines(pages * LINES_PER_PAGE, 7);
+        try (PDDocument document = new PDDocument()) {
+            for (int p = 0; p < pages; p++) {
+                PDPage page = new PDPage();
+                document.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.beginText();
+                    content.setFont(PDType1Font.HELVETICA, 10);
+                    content.setLeading(14);
+                    content.newLineAtOffset(40, 760);
+                    for (int i = 0; i < LINES_PER_PAGE; i++) {
+                        content.showText(lines.get(p * LINES_PER_PAGE + i));
+                        content.newLine();
+                    }
+                    content.endText();
+                }
+            }
+            document.save(pdf);
+        }
+        pdfBytes = Files.readAllBytes(pdf.toPath());
+        textBytes = String.join("\n", lines).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(pdf.toPath());
+    }
+
+    @Benchmark
+    public String extractPdfWhole() {
+        return TextExtractor.extractPdf(new ByteArrayInputStream(pdfBytes));
+    }
+
+    @Benchmark
+    public void openPdfFileSegments(Blackhole bh) {
+        try (TextSegments segments = TextExtractor.openPdf(pdf, 8, MAX_MAIN_MEMORY)) {
+            drain(segments, bh);
+        }
+    }
+
+    @Benchmark
+    public void openPdfStreamSegments(Blackhole bh) {
+        try (TextSegments segments = TextExtractor.openPdf(new ByteArrayInputStream(pdfBytes), 8, MAX_MAIN_MEMORY)) {
+            drain(segments, bh);
+        }
+    }
+
+    @Benchmark
+    public String extractTextWhole() {
+        return TextExtractor.extractText(new ByteArrayInputStream(textBytes));
+    }
+
+    @Benchmark
+    public void openTextSegments(Blackhole bh) {
+        try (TextSegments segments = TextExtractor.openText(new ByteArrayInputStream(textBytes), 64 * 1024)) {
+            drain(segments, bh);
+        }
+    }
+
+    private static void drain(TextSegments segments, Blackhole bh) {
+        while (segments.hasNext()) {
+            bh.consume(segments.next());
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.rag.ragbackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * @Description 生成接口准入控制配置：全局并发生成上限、有界等待队列与按客户端 IP 限流
+ * @Version 1.0.0
+ * @Date 2026-10-18 23:50
+ * @Author by zjh
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "rag.admission")
+public class AdmissionConfig {
+
+    /**
+     * 是否启用准入控制
+     */
+    private boolean enabled = true;
+
+    /**
+     * 同时进行的生成数上限，不应超过 rag.downstream.ollama-chat-permits（超过时按后者生效）
+     */
+    private int maxConcurrent = 4;
+
+    /**
+     * 等待队列长度上限，队列满直接拒绝
+     */
+    private int maxQueue = 32;
+
+    /**
+     * 最长排队时间：预计等待超过该值时直接拒绝，排队超过该值仍未轮到也拒绝
+     */
+    private Duration maxWait = Duration.ofSeconds(30);
+
+    /**
+     * 还没有统计数据时假定的单次生成耗时，用于估算排队时间，应明显小于 maxWait，否则排队队列形同虚设
+     */
+    private Duration expectedGenerationTime = Duration.ofSeconds(10);
+
+    /**
+     * 是否启用按客户端 IP 限流（Redisson RRateLimiter，多实例共享）
+     */
+    private boolean rateLimitEnabled = true;
+
+    /**
+     * 每个客户端在 rateInterval 内最多发起的生成数
+     */
+    private long rateLimit = 10;
+
+    /**
+     * 限流时间窗口
+     */
+    private Duration rateInterval = Duration.ofMinutes(1);
+}
@@ -0,0 +1,49 @@
+package com.rag.ragbackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * @Description 语义答案缓存配置：相似问题直接复用最近生成的答案
+ * @Version 1.0.0
+ * @Date 2026-10-18 16:50
+ * @Author by zjh
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "rag.answer-cache")
+public class AnswerCacheConfig {
+
+    /**
+     * 是否启用语义答案缓存
+     */
+    private boolean enabled = true;
+
+    /**
+     * 问题向量余弦相似度达到该值时命中
+     */
+    private double similarityThreshold = 0.95;
+
+    /**
+     * 最多缓存的答案数，超出时淘汰最早写入的
+     */
+    private int maxEntries = 1024;
+
+    /**
+     * 答案有效期
+     */
+    private Duration ttl = Duration.ofMinutes(10);
+
+    /**
+     * 流式回放时每个片段的字符数
+     */
+    private int replayChunkChars = 8;
+
+    /**
+     * 相同问题（归一化后）并发时是否共享同一次生成
+     */
+    private boolean singleFlight = true;
+}
@@ -0,0 +1,49 @@
+package com.rag.ragbackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * @Description BM25 倒排索引配置：入库时同步建索引，检索时与向量检索并行并做排名融合
+ * @Version 1.0.0
+ * @Date 2026-10-18 19:45
+ * @Author by zjh
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "rag.bm25")
+public class Bm25Config {
+
+    /**
+     * 是否启用混合检索（BM25 + 向量）
+     */
+    private boolean enabled = true;
+
+    /**
+     * 词频饱和参数
+     */
+    private double k1 = 1.2;
+
+    /**
+     * 文档长度归一化参数
+     */
+    private double b = 0.75;
+
+    /**
+     * 索引快照文件，启动时加载，定时与关闭时写入；不存在时从向量库重建
+     */
+    private String snapshotPath = "./data/bm25.snapshot";
+
+    /**
+     * 快照写入间隔，只在有变化时写；关闭时也会写一次
+     */
+    private Duration snapshotInterval = Duration.ofMinutes(1);
+
+    /**
+     * 已删除文档占比超过该值时整理索引
+     */
+    private double compactRatio = 0.3;
+}
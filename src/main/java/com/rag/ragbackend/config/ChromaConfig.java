@@ -1,5 +1,6 @@
 package com.rag.ragbackend.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.reactive.function.client.WebClient;
@@ -7,10 +8,17 @@ import org.springframework.web.reactive.function.client.WebClient;
 @Configuration
 public class ChromaConfig {
 
+    /**
+     * 非阻塞 Chroma 客户端，地址与 spring.ai.vectorstore.chroma.client 一致；
+     * 查询结果带向量，放宽单次响应的内存上限
+     */
     @Bean
-    public WebClient chromaClient() {
-        return WebClient.builder()
-                .baseUrl("http://localhost:8000/api/v2")
+    public WebClient chromaClient(WebClient.Builder builder,
+                                  @Value("${spring.ai.vectorstore.chroma.client.host:http://localhost}") String host,
+                                  @Value("${spring.ai.vectorstore.chroma.client.port:8000}") int port) {
+        return builder
+                .baseUrl(host + ":" + port + "/api/v2")
+                .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(16 * 1024 * 1024))
                 .build();
     }
 }
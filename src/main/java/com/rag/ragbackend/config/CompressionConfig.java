@@ -0,0 +1,49 @@
+package com.rag.ragbackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @Description 上下文压缩配置：检索到的 chunk 在拼进 prompt 前按问题压缩，减少大模型 prefill 的 token 数
+ * @Version 1.0.0
+ * @Date 2026-10-18 21:00
+ * @Author by zjh
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "rag.compression")
+public class CompressionConfig {
+
+    public enum Mode {
+        /** 按问题挑选相关句子，不调用大模型 */
+        EXTRACTIVE,
+        /** 先抽取，再由大模型概括（多一次调用，上下文更短） */
+        LLM
+    }
+
+    /**
+     * 是否启用上下文压缩
+     */
+    private boolean enabled = true;
+
+    /**
+     * 压缩方式
+     */
+    private Mode mode = Mode.EXTRACTIVE;
+
+    /**
+     * 压缩后上下文的 token 上限
+     */
+    private int maxTokens = 512;
+
+    /**
+     * 上下文不超过该 token 数时不压缩，原样使用
+     */
+    private int minInputTokens = 256;
+
+    /**
+     * LLM 模式下大模型概括结果至少要比抽取结果短这个比例才采用，否则用抽取结果
+     */
+    private double llmMinGain = 0.1;
+}
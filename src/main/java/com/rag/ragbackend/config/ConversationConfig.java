@@ -0,0 +1,54 @@
+package com.rag.ragbackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * @Description 多轮会话配置：历史存 Redis，较早的轮次在后台合并成摘要，prompt 中的历史部分大小固定
+ * @Version 1.0.0
+ * @Date 2026-10-18 21:30
+ * @Author by zjh
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "rag.conversation")
+public class ConversationConfig {
+
+    /**
+     * 是否启用多轮会话，关闭后 sessionId 被忽略
+     */
+    private boolean enabled = true;
+
+    /**
+     * prompt 中历史部分（摘要 + 最近轮次）的 token 上限
+     */
+    private int maxHistoryTokens = 512;
+
+    /**
+     * 未摘要轮次的 token 总数超过该值时触发后台摘要
+     */
+    private int summarizeThreshold = 768;
+
+    /**
+     * 摘要时保留原文的最近轮次数
+     */
+    private int keepRecentTurns = 2;
+
+    /**
+     * 摘要的 token 上限
+     */
+    private int summaryMaxTokens = 256;
+
+    /**
+     * 会话无新消息后的保留时间
+     */
+    private Duration ttl = Duration.ofHours(24);
+
+    /**
+     * 读取历史的最长等待时间，超时按无历史处理，不拖慢首 token
+     */
+    private Duration loadTimeout = Duration.ofMillis(200);
+}
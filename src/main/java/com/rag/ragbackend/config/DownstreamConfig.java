@@ -0,0 +1,44 @@
+package com.rag.ragbackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * @Description 下游并发上限：按下游服务限制同时进行的调用数，虚拟线程模式下取代线程数作为并发控制
+ * @Version 1.0.0
+ * @Date 2026-10-18 23:00
+ * @Author by zjh
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "rag.downstream")
+public class DownstreamConfig {
+
+    /**
+     * Ollama 对话生成的并发上限（流式生成在整个输出期间占用）
+     */
+    private int ollamaChatPermits = 4;
+
+    /**
+     * Ollama embedding 的并发上限，与对话分开，问题向量化不被长时间的生成阻塞
+     */
+    private int ollamaEmbedPermits = 8;
+
+    /**
+     * Chroma 调用并发上限
+     */
+    private int chromaPermits = 32;
+
+    /**
+     * Redis 调用并发上限
+     */
+    private int redisPermits = 64;
+
+    /**
+     * 等待许可的最长时间，超时抛出 AdmissionGate.RejectedException
+     */
+    private Duration acquireTimeout = Duration.ofSeconds(30);
+}
@@ -0,0 +1,40 @@
+package com.rag.ragbackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * @Description 向量缓存配置：一级进程内缓存 + 二级 Redis 缓存
+ * @Version 1.0.0
+ * @Date 2026-10-18 16:10
+ * @Author by zjh
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "rag.embedding-cache")
+public class EmbeddingCacheConfig {
+
+    /**
+     * 是否启用向量缓存
+     */
+    private boolean enabled = true;
+
+    /**
+     * 进程内缓存容量（按向量字节数计），768 维约 3KB/条
+     */
+    private DataSize localMaxSize = DataSize.ofMegabytes(64);
+
+    /**
+     * 是否启用 Redis 二级缓存
+     */
+    private boolean redisEnabled = true;
+
+    /**
+     * Redis 缓存过期时间
+     */
+    private Duration redisTtl = Duration.ofDays(7);
+}
@@ -0,0 +1,62 @@
+package com.rag.ragbackend.config;
+
+import com.rag.ragbackend.manager.hnsw.HnswVectorStore;
+import lombok.Data;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * @Description 进程内 HNSW 向量库配置，spring.ai.vectorstore.type=hnsw 时代替 Chroma
+ * （Spring AI 的 Chroma 自动配置只在 type 为 chroma 或未配置时生效）
+ * @Version 1.0.0
+ * @Date 2026-10-18 19:10
+ * @Author by zjh
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "rag.hnsw")
+public class HnswConfig {
+
+    /**
+     * 索引文件目录，容器部署时应挂载为数据卷
+     */
+    private String dataDir = "./data/hnsw";
+
+    /**
+     * 向量维度，需与 embedding 模型一致（nomic-embed-text 为 768）
+     */
+    private int dimensions = 768;
+
+    /**
+     * 每个节点在上层的邻居数，第 0 层为 2m
+     */
+    private int m = 16;
+
+    /**
+     * 构图时的候选集大小，越大召回越高、写入越慢
+     */
+    private int efConstruction = 100;
+
+    /**
+     * 检索时的候选集大小，越大召回越高、检索越慢
+     */
+    private int efSearch = 64;
+
+    /**
+     * 每写入多少个节点做一次 checkpoint
+     */
+    private int checkpointInterval = 10000;
+
+    @Bean
+    @ConditionalOnProperty(name = "spring.ai.vectorstore.type", havingValue = "hnsw")
+    public HnswVectorStore hnswVectorStore(EmbeddingModel embeddingModel) throws IOException {
+        return new HnswVectorStore(embeddingModel, Path.of(dataDir), dimensions, m, efConstruction, efSearch,
+                checkpointInterval);
+    }
+}
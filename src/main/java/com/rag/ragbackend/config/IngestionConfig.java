@@ -0,0 +1,102 @@
+package com.rag.ragbackend.config;
+
+import com.rag.ragbackend.utils.chunk.Chunker;
+import com.rag.ragbackend.utils.chunk.FixedLengthChunker;
+import com.rag.ragbackend.utils.chunk.SentenceChunker;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * @Description 文档入库流水线配置（切分 → 批量向量化 → 批量写入）
+ * @Version 1.0.0
+ * @Date 2026-10-18 10:12
+ * @Author by zjh
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "rag.ingestion")
+public class IngestionConfig {
+
+    /**
+     * 切分策略：sentence-按句子/段落边界与 token 预算切分；fixed-按固定字符数切分
+     */
+    private String chunker = "sentence";
+
+    /**
+     * chunk 最大字符数（fixed 策略）
+     */
+    private int chunkSize = 400;
+
+    /**
+     * chunk 最大 token 数（sentence 策略），需小于 embedding 模型的上下文长度
+     */
+    private int chunkMaxTokens = 256;
+
+    /**
+     * 相邻 chunk 的重叠 token 数上限（sentence 策略），按整句重叠
+     */
+    private int chunkOverlapTokens = 32;
+
+    /**
+     * 单次 embed 请求携带的 chunk 数（走 EmbeddingModel.embed(List) 多输入接口）
+     */
+    private int embedBatchSize = 32;
+
+    /**
+     * 单个文档同时在途的 embed 批次数，即对 Ollama 的并发上限
+     */
+    private int embedParallelism = 4;
+
+    /**
+     * 单次写入向量库的文档数
+     */
+    private int writeBatchSize = 256;
+
+    /**
+     * PDF 每次提取的页数
+     */
+    private int pdfPagesPerSegment = 16;
+
+    /**
+     * 单个 PDF 解析时允许占用的堆内存，超出部分使用临时 scratch 文件
+     */
+    private DataSize pdfMaxMainMemory = DataSize.ofMegabytes(16);
+
+    /**
+     * txt/md 每次读取的字符数
+     */
+    private int textSegmentChars = 64 * 1024;
+
+    /**
+     * 同时执行的入库任务数（ingestExecutor 线程数）
+     */
+    private int jobConcurrency = 2;
+
+    /**
+     * 排队等待的入库任务上限，超出时拒绝上传
+     */
+    private int jobQueueCapacity = 100;
+
+    /**
+     * 入库进度推送间隔
+     */
+    private Duration jobProgressInterval = Duration.ofMillis(500);
+
+    /**
+     * 已结束任务的保留时间，期间可查询状态
+     */
+    private Duration jobRetention = Duration.ofHours(1);
+
+    @Bean
+    public Chunker chunkerEngine() {
+        if ("fixed".equalsIgnoreCase(chunker)) {
+            return new FixedLengthChunker(chunkSize);
+        }
+        return new SentenceChunker(chunkMaxTokens, chunkOverlapTokens);
+    }
+}
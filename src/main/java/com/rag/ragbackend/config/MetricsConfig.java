@@ -0,0 +1,89 @@
+package com.rag.ragbackend.config;
+
+import com.rag.ragbackend.manager.AdmissionGate;
+import com.rag.ragbackend.manager.DownstreamLimiter;
+import com.rag.ragbackend.manager.SemanticAnswerCache;
+import com.rag.ragbackend.manager.SseEmitterManager;
+import com.rag.ragbackend.service.impl.CachedEmbeddingServiceImpl;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @Description 运行状态指标：SSE 任务与缓冲、各级缓存命中、下游并发许可、准入控制。
+ * 线程池（executor.active / executor.queued 等，name 标签为 bean 名）由 Spring Boot 自动注册
+ * @Version 1.0.0
+ * @Date 2026-10-18 23:30
+ * @Author by zjh
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MeterBinder sseMetrics(SseEmitterManager sseManager) {
+        return registry -> {
+            Gauge.builder("rag.sse.tasks", sseManager, m -> m.stats().liveTasks())
+                    .description("登记中的 SSE 任务数").register(registry);
+            Gauge.builder("rag.sse.emitters", sseManager, m -> m.stats().connectedEmitters())
+                    .description("已连接的 SSE 客户端数").register(registry);
+            Gauge.builder("rag.sse.buffered.events", sseManager, m -> m.stats().bufferedEvents())
+                    .description("缓冲中的事件数").register(registry);
+            Gauge.builder("rag.sse.buffered.bytes", sseManager, m -> m.stats().bufferedBytes())
+                    .description("缓冲中的事件字节数").baseUnit("bytes").register(registry);
+            FunctionCounter.builder("rag.sse.evicted", sseManager, m -> m.stats().evictedTasks())
+                    .description("空闲淘汰的任务数").register(registry);
+            Gauge.builder("rag.sse.relayed", sseManager, m -> m.stats().relayedEmitters())
+                    .description("转发其他实例任务的 SSE 客户端数").register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder cacheMetrics(CachedEmbeddingServiceImpl embeddingCache, SemanticAnswerCache answerCache) {
+        return registry -> {
+            FunctionCounter.builder("rag.cache.requests", embeddingCache, c -> c.stats().localHits())
+                    .tags("cache", "embedding-local", "result", "hit").register(registry);
+            FunctionCounter.builder("rag.cache.requests", embeddingCache, c -> c.stats().localMisses())
+                    .tags("cache", "embedding-local", "result", "miss").register(registry);
+            FunctionCounter.builder("rag.cache.requests", embeddingCache, c -> c.stats().redisHits())
+                    .tags("cache", "embedding-redis", "result", "hit").register(registry);
+            FunctionCounter.builder("rag.cache.requests", embeddingCache, c -> c.stats().redisMisses())
+                    .tags("cache", "embedding-redis", "result", "miss").register(registry);
+            Gauge.builder("rag.cache.hit.ratio", embeddingCache, c -> c.stats().hitRatio())
+                    .tag("cache", "embedding").register(registry);
+
+            FunctionCounter.builder("rag.cache.requests", answerCache, SemanticAnswerCache::hitCount)
+                    .tags("cache", "answer", "result", "hit").register(registry);
+            FunctionCounter.builder("rag.cache.requests", answerCache, SemanticAnswerCache::missCount)
+                    .tags("cache", "answer", "result", "miss").register(registry);
+            Gauge.builder("rag.cache.hit.ratio", answerCache, c -> {
+                long total = c.hitCount() + c.missCount();
+                return total == 0 ? 0 : (double) c.hitCount() / total;
+            }).tag("cache", "answer").register(registry);
+            Gauge.builder("rag.cache.size", answerCache, SemanticAnswerCache::size)
+                    .tag("cache", "answer").register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder downstreamMetrics(DownstreamLimiter limiter) {
+        return registry -> {
+            for (DownstreamLimiter.Downstream downstream : DownstreamLimiter.Downstream.values()) {
+                Gauge.builder("rag.downstream.permits.available", limiter, l -> l.available(downstream))
+                        .tag("downstream", downstream.name().toLowerCase())
+                        .register(registry);
+            }
+        };
+    }
+
+    @Bean
+    public MeterBinder admissionMetrics(AdmissionGate gate) {
+        return registry -> {
+            Gauge.builder("rag.admission.active", gate, AdmissionGate::active)
+                    .description("进行中的生成数").register(registry);
+            Gauge.builder("rag.admission.waiting", gate, AdmissionGate::waiting)
+                    .description("排队等待的生成数").register(registry);
+        };
+    }
+}
@@ -0,0 +1,113 @@
+package com.rag.ragbackend.config;
+
+import com.rag.ragbackend.pojo.dto.RetrievalOptions;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * @Description 检索默认参数，请求未指定的检索参数取这里的值
+ * @Version 1.0.0
+ * @Date 2026-10-18 17:35
+ * @Author by zjh
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "rag.retrieval")
+public class RetrievalConfig {
+
+    /**
+     * 默认召回数量
+     */
+    private int topK = 4;
+
+    /**
+     * 请求可指定的召回数量上限
+     */
+    private int maxTopK = 20;
+
+    /**
+     * 默认最低余弦相似度
+     */
+    private double minScore = 0.3;
+
+    /**
+     * 默认相对截断比例，0 表示不截断
+     */
+    private double relativeCutoff = 0.8;
+
+    /**
+     * 默认上下文 token 上限
+     */
+    private int maxContextTokens = 1536;
+
+    /**
+     * 混合检索时倒数排名融合（RRF）的平滑常数 k：得分 = Σ 1 / (k + 排名)
+     */
+    private int rrfK = 60;
+
+    /**
+     * 过量召回倍数：向量与 BM25 各召回 topK × 该倍数个候选，供重排与去重挑选
+     */
+    private int fetchFactor = 3;
+
+    /**
+     * BM25 命中豁免相似度阈值的条件：排名在 topK 之内且得分不低于 BM25 最高分 × 该比例；1 表示只有最高分豁免
+     */
+    private double lexicalRelativeCutoff = 0.5;
+
+    /**
+     * MMR 相关性权重 λ：得分 = λ × 与问题的相似度 − (1 − λ) × 与已选 chunk 的最大相似度
+     */
+    private double mmrLambda = 0.7;
+
+    /**
+     * 与已选 chunk 的向量余弦相似度达到该值视为重复
+     */
+    private double duplicateSimilarity = 0.95;
+
+    /**
+     * 与已选 chunk 的字符 shingle Jaccard 相似度达到该值视为重复
+     */
+    private double duplicateJaccard = 0.8;
+
+    /**
+     * shingle 长度（字符数，忽略空白）
+     */
+    private int shingleSize = 5;
+
+    /**
+     * 用默认值补全请求参数并做范围修正，返回新对象；过滤条件去空白、去重、排序，保证相同条件得到相同的 filterKey
+     */
+    public RetrievalOptions resolve(RetrievalOptions options) {
+        RetrievalOptions o = options == null ? RetrievalOptions.defaults() : options;
+        RetrievalOptions resolved = new RetrievalOptions();
+        resolved.setTopK(Math.max(1, Math.min(maxTopK, o.getTopK() == null ? topK : o.getTopK())));
+        resolved.setMinScore(o.getMinScore() == null ? minScore : o.getMinScore());
+        resolved.setRelativeCutoff(o.getRelativeCutoff() == null ? relativeCutoff
+                : Math.max(0, Math.min(1, o.getRelativeCutoff())));
+        resolved.setMaxContextTokens(o.getMaxContextTokens() == null || o.getMaxContextTokens() <= 0
+                ? maxContextTokens : o.getMaxContextTokens());
+        resolved.setTenant(o.getTenant() == null || o.getTenant().isBlank() ? null : o.getTenant().trim());
+        resolved.setDocIds(clean(o.getDocIds()));
+        resolved.setTags(clean(o.getTags()));
+        return resolved;
+    }
+
+    private static List<String> clean(List<String> values) {
+        if (values == null) {
+            return null;
+        }
+        List<String> cleaned = values.stream()
+                .filter(Objects::nonNull)
+                .map(String::trim)
+                .filter(v -> !v.isEmpty())
+                .distinct()
+                .sorted()
+                .toList();
+        return cleaned.isEmpty() ? null : cleaned;
+    }
+}
@@ -0,0 +1,64 @@
+package com.rag.ragbackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * @Description SSE 配置：连接超时、空闲淘汰、每个任务的事件缓冲上限与流式输出的 token 合并
+ * @Version 1.0.0
+ * @Date 2026-10-18 22:00
+ * @Author by zjh
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "rag.sse")
+public class SseConfig {
+
+    /**
+     * 单个 SSE 连接的超时时间，超时后客户端可带 Last-Event-ID 重连续传
+     */
+    private Duration emitterTimeout = Duration.ofMinutes(5);
+
+    /**
+     * 任务没有客户端连接且无新事件超过该时间即淘汰（含从未被连接的任务）
+     */
+    private Duration idleTtl = Duration.ofMinutes(2);
+
+    /**
+     * 每个任务最多缓冲的事件数，超出丢弃最早的
+     */
+    private int maxEvents = 4096;
+
+    /**
+     * 每个任务最多缓冲的字节数（事件 JSON 的 UTF-8 长度），超出丢弃最早的
+     */
+    private int maxBufferBytes = 256 * 1024;
+
+    /**
+     * 淘汰扫描间隔
+     */
+    private Duration sweepInterval = Duration.ofSeconds(30);
+
+    /**
+     * 流式输出合并窗口：首 token 立即下发，之后的 token 在窗口内攒成一帧，0 表示逐 token 下发
+     */
+    private Duration coalesceWindow = Duration.ofMillis(30);
+
+    /**
+     * 一帧最多合并的 token 数，达到即下发
+     */
+    private int coalesceMaxTokens = 32;
+
+    /**
+     * 生成中的任务没有任何客户端连接（从未连上，或断开后未重连）超过该时间即取消生成，释放模型算力
+     */
+    private Duration disconnectGrace = Duration.ofSeconds(15);
+
+    /**
+     * 是否启用跨实例转发（多实例部署时开启）：事件同时写入 Redis，/stream 可落在任意实例
+     */
+    private boolean relayEnabled = false;
+}
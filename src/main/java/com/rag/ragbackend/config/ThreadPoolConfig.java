@@ -5,6 +5,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.util.concurrent.Executor;
@@ -12,7 +13,8 @@ import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 /**
- * @Description SpringBoot线程池配置类，支持通过配置文件自定义线程池参数，优雅关闭，拒绝策略可控
+ * @Description SpringBoot线程池配置类，支持通过配置文件自定义线程池参数，优雅关闭，拒绝策略可控。
+ * 线程池状态（活跃线程、队列长度等）由 Actuator 以 executor.* 指标暴露
  * @Version 1.0.0
  * @Date 2025-12-27 14:48
  * @Author by zjh
@@ -40,6 +42,23 @@ public class ThreadPoolConfig {
     @Value("${thread.pool.name-prefix:biz-task-}")
     private String threadNamePrefix;
 
+    // 向量化线程数（所有上传共享，决定对 Ollama 的 embed 并发上限）
+    @Value("${rag.ingestion.embed-parallelism:4}")
+    private int embedParallelism;
+
+    // 入库任务线程数
+    @Value("${rag.ingestion.job-concurrency:2}")
+    private int jobConcurrency;
+
+    // 入库任务排队上限
+    @Value("${rag.ingestion.job-queue-capacity:100}")
+    private int jobQueueCapacity;
+
+    // 虚拟线程模式（与 Tomcat 请求线程共用同一开关），开启后 bizExecutor 每个任务一个虚拟线程，
+    // 并发由 DownstreamLimiter 按下游限制，不再由线程数限制
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
     // 拒绝策略（默认CallerRunsPolicy：由调用线程执行）
     private static final ThreadPoolExecutor.CallerRunsPolicy REJECT_POLICY = new ThreadPoolExecutor.CallerRunsPolicy();
 
@@ -48,7 +67,15 @@ public class ThreadPoolConfig {
      */
     @Bean(name = "bizExecutor")
     public Executor bizExecutor() {
-        ThreadPoolTaskExecutor executor = new VisibleThreadPoolTaskExecutor();
+        if (virtualThreads) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(threadNamePrefix);
+            executor.setVirtualThreads(true);
+            // 关闭时等待进行中的任务
+            executor.setTaskTerminationTimeout(60_000);
+            log.info("业务线程池初始化完成 | 虚拟线程模式");
+            return executor;
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
         // 核心线程数
         executor.setCorePoolSize(corePoolSize);
         // 最大线程数
@@ -73,65 +100,84 @@ public class ThreadPoolConfig {
     }
 
     /**
-     * 优雅关闭线程池（Spring销毁前执行）
+     * 入库向量化线程池（可通过@Qualifier("embedExecutor")注入使用）
+     * 核心线程数 = 最大线程数 = embed 并发上限，多个上传共享，避免压垮 Ollama
      */
-    @PreDestroy
-    public void destroy() {
-        ThreadPoolTaskExecutor executor = (ThreadPoolTaskExecutor) bizExecutor();
-        if (executor != null) {
-            executor.shutdown();
-            try {
-                // 等待线程池关闭，超时则强制关闭
-                if (!executor.getThreadPoolExecutor().awaitTermination(1, TimeUnit.MINUTES)) {
-                    executor.shutdown();
-                    log.warn("业务线程池强制关闭，仍有未完成任务");
-                } else {
-                    log.info("业务线程池优雅关闭完成");
-                }
-            } catch (InterruptedException e) {
-                executor.shutdown();
-                Thread.currentThread().interrupt();
-                log.error("线程池关闭被中断", e);
-            }
-        }
+    @Bean(name = "embedExecutor")
+    public Executor embedExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(embedParallelism);
+        executor.setMaxPoolSize(embedParallelism);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setKeepAliveSeconds(keepAliveSeconds);
+        executor.setThreadNamePrefix("embed-task-");
+        executor.setRejectedExecutionHandler(REJECT_POLICY);
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(60);
+        executor.initialize();
+        log.info("向量化线程池初始化完成 | 线程数：{} | 队列容量：{}", embedParallelism, queueCapacity);
+        return executor;
     }
 
     /**
-     * 可视化线程池（打印线程池状态，便于监控）
+     * 入库任务线程池（可通过@Qualifier("ingestExecutor")注入使用），与 bizExecutor 隔离，
+     * 队列满时直接拒绝（AbortPolicy），不能让上传请求线程去执行入库
      */
-    static class VisibleThreadPoolTaskExecutor extends ThreadPoolTaskExecutor {
-
-        private void logThreadPoolStatus() {
-            ThreadPoolExecutor executor = getThreadPoolExecutor();
-            if (executor == null) {
-                return;
-            }
-            log.info("==========线程池状态监控==========");
-            log.info("核心线程数：{}", executor.getCorePoolSize());
-            log.info("活跃线程数：{}", executor.getActiveCount());
-            log.info("最大线程数：{}", executor.getMaximumPoolSize());
-            log.info("线程池当前线程数：{}", executor.getPoolSize());
-            log.info("队列等待任务数：{}", executor.getQueue().size());
-            log.info("已完成任务数：{}", executor.getCompletedTaskCount());
-            log.info("==================================");
-        }
+    @Bean(name = "ingestExecutor")
+    public Executor ingestExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(jobConcurrency);
+        executor.setMaxPoolSize(jobConcurrency);
+        executor.setQueueCapacity(jobQueueCapacity);
+        executor.setKeepAliveSeconds(keepAliveSeconds);
+        executor.setThreadNamePrefix("ingest-task-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        log.info("入库线程池初始化完成 | 线程数：{} | 队列容量：{}", jobConcurrency, jobQueueCapacity);
+        return executor;
+    }
 
-        @Override
-        public void execute(Runnable task) {
-            logThreadPoolStatus();
-            super.execute(task);
-        }
+    /**
+     * 检索线程池（可通过@Qualifier("retrievalExecutor")注入使用），BM25 检索与向量检索并行时使用，
+     * 都是短任务；队列满时由调用线程执行，退化为串行
+     */
+    @Bean(name = "retrievalExecutor")
+    public Executor retrievalExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(corePoolSize);
+        executor.setMaxPoolSize(corePoolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setKeepAliveSeconds(keepAliveSeconds);
+        executor.setThreadNamePrefix("retrieval-task-");
+        executor.setRejectedExecutionHandler(REJECT_POLICY);
+        executor.initialize();
+        log.info("检索线程池初始化完成 | 线程数：{} | 队列容量：{}", corePoolSize, queueCapacity);
+        return executor;
+    }
 
-        @Override
-        public <T> java.util.concurrent.Future<T> submit(java.util.concurrent.Callable<T> task) {
-            logThreadPoolStatus();
-            return super.submit(task);
+    /**
+     * 优雅关闭线程池（Spring销毁前执行）
+     */
+    @PreDestroy
+    public void destroy() {
+        if (!(bizExecutor() instanceof ThreadPoolTaskExecutor executor)) {
+            // 虚拟线程执行器由 Spring 关闭（close 时按 taskTerminationTimeout 等待）
+            return;
         }
-
-        @Override
-        public java.util.concurrent.Future<?> submit(Runnable task) {
-            logThreadPoolStatus();
-            return super.submit(task);
+        executor.shutdown();
+        try {
+            // 等待线程池关闭，超时则强制关闭
+            if (!executor.getThreadPoolExecutor().awaitTermination(1, TimeUnit.MINUTES)) {
+                executor.shutdown();
+                log.warn("业务线程池强制关闭，仍有未完成任务");
+            } else {
+                log.info("业务线程池优雅关闭完成");
+            }
+        } catch (InterruptedException e) {
+            executor.shutdown();
+            Thread.currentThread().interrupt();
+            log.error("线程池关闭被中断", e);
         }
     }
 }
@@ -1,19 +1,32 @@
 package com.rag.ragbackend.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rag.ragbackend.config.SseConfig;
+import com.rag.ragbackend.manager.AdmissionGate;
+import com.rag.ragbackend.manager.RagMetrics;
 import com.rag.ragbackend.manager.SseEmitterManager;
+import com.rag.ragbackend.pojo.dto.RetrievalOptions;
+import com.rag.ragbackend.pojo.resp.SseMessage;
 import com.rag.ragbackend.service.ChromaRAGService;
 import com.rag.ragbackend.utils.MD5Util;
+import com.rag.ragbackend.utils.TokenCoalescer;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
-import java.util.Map;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
@@ -33,32 +46,65 @@ public class ChatController {
 
     private final SseEmitterManager sseManager;
 
+    private final SseConfig sseConfig;
+
+    private final ObjectMapper objectMapper;
+
+    private final AdmissionGate admissionGate;
+
+    private final RagMetrics ragMetrics;
+
+    /**
+     * 客户端超出限流时返回 429，Retry-After 为建议的重试秒数
+     */
+    @ExceptionHandler(AdmissionGate.RejectedException.class)
+    public ResponseEntity<String> rejected(AdmissionGate.RejectedException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(e.getMessage());
+    }
+
     @PostMapping("/ask")
     public String ragDb(@RequestBody Question req, HttpServletRequest request) {
         String clientIP = getClientIpAddress(request);
         log.info("请求来自IP: {}", clientIP);
+        // 先限流再建任务，被拒绝的请求不占用 bizExecutor 和 SSE 缓冲
+        admissionGate.admit(clientIP);
         String taskId = MD5Util.md5WithUUIDSalt(req.getMessage());
         sseManager.create(taskId);
         String finalTaskId = taskId;
         CompletableFuture.runAsync(() -> {
             log.info("异步任务开始");
             try {
-                ragService.asyncGenerate(finalTaskId, req.getMessage());
+                ragService.asyncGenerate(finalTaskId, req.getMessage(), req.getSessionId(), req.retrievalOptions());
             } catch (Exception e) {
-                Thread.currentThread().interrupt();
+                // 订阅前就失败（如参数解析），通知客户端并结束任务，不等空闲清理
+                log.error("生成任务启动失败, taskId: {}", finalTaskId, e);
+                sseManager.send(finalTaskId, SseMessage.error(e));
+                sseManager.complete(finalTaskId);
             }
             log.info("异步任务完成");
         }, bizExecutor);
         return taskId;
     }
 
+    /**
+     * 取消 /ask 发起的生成，任务在其他实例上时转发取消；任务不存在或已结束返回 false
+     */
+    @PostMapping("/cancel")
+    public boolean cancel(@RequestParam String taskId) {
+        return sseManager.cancel(taskId);
+    }
+
     /**
      * 2️ 前端用 taskId 建立 SSE 监听
      * 返回SseEmitter需要设置 MediaType.TEXT_EVENT_STREAM_VALUE
+     * 断线重连时浏览器自动带上 Last-Event-ID，从该事件之后续传
      */
     @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public SseEmitter stream(@RequestParam String taskId) {
-        return sseManager.get(taskId);
+    public SseEmitter stream(@RequestParam String taskId,
+                             @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        return sseManager.connect(taskId, lastEventId);
     }
     @PostMapping("/getStreamMsg")
     public String getStreamMsg(@RequestBody Question req, HttpServletRequest request) {
@@ -70,36 +116,83 @@ public class ChatController {
     }
 
     @PostMapping(value = "/ragDb", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public SseEmitter streamChatWithRAG(@RequestBody Question req) {
+    public SseEmitter streamChatWithRAG(@RequestBody Question req, HttpServletRequest request) {
+        admissionGate.admit(getClientIpAddress(request));
         SseEmitter emitter = new SseEmitter(5 * 60 * 1000L); // 0-不超时，5 * 60 * 1000L - 5分钟超时
-        Flux<String> stringFlux = ragService.streamChatWithRAG(req.message);
-        stringFlux
-                .doOnNext(token -> {
+        // 向量化、检索和排队等待名额都在订阅后执行，不占用 Tomcat 线程
+        Flux<String> stringFlux = TokenCoalescer.coalesce(
+                ragService.streamChatWithRAG(req.message, req.sessionId, req.retrievalOptions()),
+                sseConfig.getCoalesceWindow(), sseConfig.getCoalesceMaxTokens());
+        Disposable upstream = stringFlux.subscribe(
+                tokens -> {
                     try {
-                        Map<String, Object> payload = Map.of(
-                                "type", "delta",
-                                "content", token
-                        );
-                        emitter.send(payload);
-                        log.info("发送 token={}", token);
+                        // 每帧序列化一次，按 JSON 文本直接写出
+                        String frame = objectMapper.writeValueAsString(SseMessage.delta(tokens));
+                        emitter.send(SseEmitter.event().data(frame, MediaType.APPLICATION_JSON));
                     } catch (Exception e) {
-                        log.error("SSE 发送错误", e);
+                        log.debug("SSE 发送失败，客户端可能已断开", e);
                         emitter.completeWithError(e);
                     }
-                })
-                .doOnComplete(() -> {
-                    emitter.complete();
-                })
-                .doOnError(e -> {
-                    emitter.completeWithError(e);
-                }).subscribe();
-        log.info("返回值={}", stringFlux);
+                },
+                error -> {
+                    // 以错误帧结束，名额不足被拒绝时帧里带 retryAfter
+                    try {
+                        emitter.send(SseEmitter.event().data(objectMapper.writeValueAsString(SseMessage.error(error)),
+                                MediaType.APPLICATION_JSON));
+                        emitter.complete();
+                    } catch (Exception e) {
+                        emitter.completeWithError(error);
+                    }
+                },
+                emitter::complete);
+        // 客户端断开、连接超时时取消上游生成；正常结束时上游已终止，不重复计数
+        emitter.onTimeout(() -> dispose(upstream, "ragDb", "timeout"));
+        emitter.onError(e -> dispose(upstream, "ragDb", "disconnect"));
+        emitter.onCompletion(() -> dispose(upstream, "ragDb", "disconnect"));
         return emitter;
     }
 
+    /**
+     * 响应式流式问答：直接返回 Flux<ServerSentEvent>，由 Spring MVC 按连接的写出进度逐帧向上游请求，
+     * 背压经 token 合并一直传到 Ollama 的响应流；等待向量化、检索和模型输出期间不占请求线程，客户端断开时取消上游
+     */
+    @PostMapping(value = "/flux", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<SseMessage>> fluxChat(@RequestBody Question req, HttpServletRequest request) {
+        admissionGate.admit(getClientIpAddress(request));
+        Flux<String> tokens = ragService.reactiveStream(req.message, req.sessionId, req.retrievalOptions());
+        return TokenCoalescer.coalesce(tokens, sseConfig.getCoalesceWindow(), sseConfig.getCoalesceMaxTokens())
+                .map(chunk -> ServerSentEvent.builder(SseMessage.delta(chunk)).build())
+                .concatWithValues(ServerSentEvent.builder(SseMessage.done()).build())
+                .onErrorResume(e -> Mono.just(ServerSentEvent.builder(SseMessage.error(e)).build()))
+                // 客户端断开或响应超时时 Spring MVC 取消订阅，取消沿链路传到 Ollama 流
+                .doOnCancel(() -> ragMetrics.cancelled("flux", "disconnect"));
+    }
+
+    private void dispose(Disposable upstream, String endpoint, String reason) {
+        if (!upstream.isDisposed()) {
+            upstream.dispose();
+            ragMetrics.cancelled(endpoint, reason);
+        }
+    }
+
     @Data
     public static class Question {
         public String message;
+
+        /** 会话 id，可选；同一会话的多次提问共享对话历史 */
+        public String sessionId;
+
+        /** 以下检索参数均可选，不传取 rag.retrieval 默认值 */
+        public Integer topK;
+        public Double minScore;
+        public List<String> docIds;
+        public String tenant;
+        public List<String> tags;
+        public Integer maxContextTokens;
+
+        public RetrievalOptions retrievalOptions() {
+            return new RetrievalOptions(topK, minScore, docIds, tenant, tags, maxContextTokens, null);
+        }
     }
 
     /**
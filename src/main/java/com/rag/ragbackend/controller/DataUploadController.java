@@ -1,11 +1,19 @@
 package com.rag.ragbackend.controller;
 
-import com.rag.ragbackend.service.DataUploadService;
-import com.rag.ragbackend.utils.TextExtractor;
+import com.rag.ragbackend.manager.IngestionJob;
+import com.rag.ragbackend.manager.IngestionJobManager;
+import com.rag.ragbackend.manager.SseEmitterManager;
+import com.rag.ragbackend.pojo.resp.IngestionProgress;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
 
 @Slf4j
 @RestController
@@ -14,27 +22,64 @@ import org.springframework.web.multipart.MultipartFile;
 @CrossOrigin
 public class DataUploadController {
 
-    private final DataUploadService uploadService;
+    private final IngestionJobManager jobManager;
+
+    private final SseEmitterManager sseManager;
 
+    /**
+     * 1️ 上传文件：落盘后立即返回 jobId，入库在 ingestExecutor 上异步执行；
+     * tenant、tags（逗号分隔）可选，用于问答时按租户/标签过滤
+     */
     @PostMapping("/upload")
-    public UploadResponse upload(@RequestParam("file") MultipartFile file) throws Exception {
+    public UploadResponse upload(@RequestParam("file") MultipartFile file,
+                                 @RequestParam(value = "tenant", required = false) String tenant,
+                                 @RequestParam(value = "tags", required = false) List<String> tags) throws Exception {
 
         String filename = file.getOriginalFilename();
         if (filename == null) throw new RuntimeException("文件名为空");
 
-        String text;
-
+        String suffix;
         if (filename.endsWith(".pdf")) {
-            text = TextExtractor.extractPdf(file.getInputStream());
+            suffix = ".pdf";
         } else if (filename.endsWith(".txt") || filename.endsWith(".md")) {
-            text = TextExtractor.extractText(file.getInputStream());
+            suffix = ".txt";
         } else {
             throw new RuntimeException("仅支持 PDF / TXT / MD 文件");
         }
-        int chunks = uploadService.indexDocument(text);
+        // multipart 临时文件在请求结束后会被删除，需要转存一份给异步任务
+        Path tmp = Files.createTempFile("rag-upload-", suffix);
+        file.transferTo(tmp);
+
+        IngestionJob job = jobManager.submit(filename, tmp, tenant, tags);
+        return new UploadResponse("已提交入库任务", job.getJobId());
+    }
+
+    /**
+     * 2️ 前端用 jobId 建立 SSE 监听入库进度
+     */
+    @GetMapping(value = "/progress", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter progress(@RequestParam String jobId,
+                               @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        return sseManager.connect(jobId, lastEventId);
+    }
+
+    /**
+     * 查询任务状态
+     */
+    @GetMapping("/job")
+    public IngestionProgress job(@RequestParam String jobId) {
+        IngestionJob job = jobManager.get(jobId);
+        if (job == null) throw new RuntimeException("任务不存在或已过期");
+        return job.snapshot();
+    }
 
-        return new UploadResponse("上传成功", chunks);
+    /**
+     * 取消任务
+     */
+    @PostMapping("/cancel")
+    public boolean cancel(@RequestParam String jobId) {
+        return jobManager.cancel(jobId);
     }
 
-    public record UploadResponse(String message, int chunks) {}
+    public record UploadResponse(String message, String jobId) {}
 }
@@ -0,0 +1,248 @@
+package com.rag.ragbackend.manager;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.rag.ragbackend.config.AdmissionConfig;
+import com.rag.ragbackend.config.DownstreamConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RRateLimiter;
+import org.redisson.api.RateIntervalUnit;
+import org.redisson.api.RateType;
+import org.redisson.api.RedissonClient;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @Description 生成接口准入控制，过载时尽早拒绝，保证已接收请求的延迟：
+ * - 客户端超出限流时接口直接返回 HTTP 429 + Retry-After；名额不足时生成流以 RejectedException 结束，
+ *   此时响应已开始（名额只在确定要调用模型时才申请），各接口以 error 事件通知客户端，retryAfter 字段为建议的重试秒数
+ * - 按客户端 IP 的令牌桶（Redisson RRateLimiter，多实例共享），Redis 不可用时放行
+ * - 全局并发生成上限（信号量），满了进入有界等待队列；只有真正调用模型的生成占名额，
+ *   语义缓存命中和加入进行中生成（single-flight）的请求不占
+ * - 按进行中生成的剩余时间估算排队时间（第 n 个排队者等第 n 个空出的名额），预计超过 maxWait 的请求在入队前就拒绝；
+ *   排队到期仍未轮到的也拒绝
+ * @Version 1.0.0
+ * @Date 2026-10-18 23:50
+ * @Author by zjh
+ */
+@Slf4j
+@Component
+public class AdmissionGate {
+
+    private static final String RATE_KEY_PREFIX = "rag:rate:";
+
+    private final AdmissionConfig admissionConfig;
+    private final RedissonClient redissonClient;
+    private final MeterRegistry registry;
+    private final Semaphore slots;
+    /** 实际生效的并发生成上限：不超过 Ollama 对话许可数，否则超出的生成只会在许可上再排一次队 */
+    private final int concurrency;
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    /** 持有名额的凭证，用于估算下一个名额何时空出 */
+    private final Set<Permit> running = ConcurrentHashMap.newKeySet();
+
+    /** 已在 Redis 中初始化过速率的客户端，避免每次请求都 trySetRate */
+    private final Cache<String, RRateLimiter> limiters;
+
+    /** 单次生成耗时的指数移动平均（毫秒） */
+    private volatile double avgGenerationMillis;
+
+    public AdmissionGate(AdmissionConfig admissionConfig, DownstreamConfig downstreamConfig,
+                         RedissonClient redissonClient, MeterRegistry registry) {
+        this.admissionConfig = admissionConfig;
+        this.redissonClient = redissonClient;
+        this.registry = registry;
+        this.concurrency = Math.max(1, Math.min(admissionConfig.getMaxConcurrent(), downstreamConfig.getOllamaChatPermits()));
+        if (concurrency < admissionConfig.getMaxConcurrent()) {
+            log.warn("rag.admission.max-concurrent={} 大于 rag.downstream.ollama-chat-permits={}，按 {} 生效",
+                    admissionConfig.getMaxConcurrent(), downstreamConfig.getOllamaChatPermits(), concurrency);
+        }
+        this.slots = new Semaphore(concurrency, true);
+        this.avgGenerationMillis = admissionConfig.getExpectedGenerationTime().toMillis();
+        this.limiters = Caffeine.newBuilder()
+                .maximumSize(100_000)
+                .expireAfterAccess(admissionConfig.getRateInterval())
+                .build();
+    }
+
+    /**
+     * 请求被拒绝，retryAfterSeconds 为建议的重试间隔
+     */
+    @Getter
+    public static class RejectedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final long retryAfterSeconds;
+
+        public RejectedException(String message, long retryAfterSeconds) {
+            super(message);
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+    }
+
+    /**
+     * 生成名额：拿到时开始计时，归还时更新平均耗时（幂等）
+     */
+    private final class Permit {
+        private final long startedAt = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Permit() {
+            running.add(this);
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                running.remove(this);
+                double millis = (System.nanoTime() - startedAt) / 1e6;
+                avgGenerationMillis = avgGenerationMillis * 0.9 + millis * 0.1;
+                slots.release();
+            }
+        }
+    }
+
+    /**
+     * 客户端准入：按 IP 限流，超出时抛出 RejectedException。不占生成名额，语义缓存命中、加入进行中的生成同样计数
+     */
+    public void admit(String clientIp) {
+        if (admissionConfig.isEnabled()) {
+            checkRate(clientIp);
+        }
+    }
+
+    /**
+     * 给一次真正的模型生成加上名额：订阅时有空闲名额直接开始，否则按队列长度和预计等待决定排队或以
+     * RejectedException 结束；排队在 boundedElastic 上等待，不阻塞订阅线程。流结束（完成、出错、取消）时归还
+     */
+    public <T> Flux<T> guard(Flux<T> generation) {
+        if (!admissionConfig.isEnabled()) {
+            return generation;
+        }
+        Mono<Permit> permit = Mono.defer(() -> {
+            if (slots.tryAcquire()) {
+                return Mono.just(new Permit());
+            }
+            int position = waiting.incrementAndGet();
+            if (position > admissionConfig.getMaxQueue()) {
+                waiting.decrementAndGet();
+                reject("queue");
+                return Mono.error(new RejectedException("服务繁忙，请稍后重试", retryAfterSeconds()));
+            }
+            long estimatedMillis = estimateWaitMillis(position);
+            if (estimatedMillis > admissionConfig.getMaxWait().toMillis()) {
+                waiting.decrementAndGet();
+                reject("deadline");
+                return Mono.error(new RejectedException("服务繁忙，预计等待过长，请稍后重试",
+                        Math.max(1, (estimatedMillis + 999) / 1000)));
+            }
+            return Mono.fromCallable(this::await).subscribeOn(Schedulers.boundedElastic());
+        })
+                // 排队期间被取消、名额拿到后才被丢弃时归还
+                .doOnDiscard(Permit.class, Permit::release);
+        return Flux.usingWhen(permit, p -> generation, p -> Mono.fromRunnable(p::release));
+    }
+
+    private Permit await() {
+        try {
+            if (!slots.tryAcquire(admissionConfig.getMaxWait().toMillis(), TimeUnit.MILLISECONDS)) {
+                reject("timeout");
+                throw new RejectedException("服务繁忙，排队超时，请稍后重试", retryAfterSeconds());
+            }
+            return new Permit();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedException("排队被中断", retryAfterSeconds());
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    /**
+     * 第 position 个排队者等到第 position 个空出的名额：先是进行中的生成按剩余时间（平均耗时 - 已运行时间）依次结束，
+     * 之后每轮再过一个平均耗时
+     */
+    private long estimateWaitMillis(int position) {
+        long avg = (long) avgGenerationMillis;
+        long now = System.nanoTime();
+        long[] remaining = running.stream()
+                .mapToLong(t -> Math.max(0, avg - TimeUnit.NANOSECONDS.toMillis(now - t.startedAt)))
+                .toArray();
+        Arrays.sort(remaining);
+        int index = (position - 1) % concurrency;
+        long rounds = (position - 1) / concurrency;
+        return (index < remaining.length ? remaining[index] : 0) + rounds * avg;
+    }
+
+    public int active() {
+        return concurrency - slots.availablePermits();
+    }
+
+    public int waiting() {
+        return waiting.get();
+    }
+
+    private void checkRate(String clientIp) {
+        if (!admissionConfig.isRateLimitEnabled() || clientIp == null) {
+            return;
+        }
+        boolean allowed;
+        try {
+            allowed = tryAcquireRate(clientIp);
+        } catch (Exception e) {
+            // 限流依赖 Redis，Redis 故障时放行，不因限流组件不可用拒绝正常请求
+            log.warn("客户端限流检查失败，放行, ip: {}, {}", clientIp, e.getMessage());
+            return;
+        }
+        if (!allowed) {
+            reject("rate");
+            throw new RejectedException("请求过于频繁，请稍后重试", admissionConfig.getRateInterval().toSeconds());
+        }
+    }
+
+    private boolean tryAcquireRate(String clientIp) {
+        RRateLimiter limiter = limiters.get(clientIp, this::initLimiter);
+        try {
+            return limiter.tryAcquire();
+        } catch (RuntimeException e) {
+            // Redis 中的限流配置已过期（空闲超过两个窗口），重新初始化后再试一次
+            limiters.invalidate(clientIp);
+            return limiters.get(clientIp, this::initLimiter).tryAcquire();
+        }
+    }
+
+    private RRateLimiter initLimiter(String clientIp) {
+        Duration interval = admissionConfig.getRateInterval();
+        RRateLimiter limiter = redissonClient.getRateLimiter(RATE_KEY_PREFIX + clientIp);
+        limiter.trySetRate(RateType.OVERALL, admissionConfig.getRateLimit(), interval.toMillis(),
+                RateIntervalUnit.MILLISECONDS);
+        limiter.expire(interval.multipliedBy(2));
+        return limiter;
+    }
+
+    private long retryAfterSeconds() {
+        return Math.max(1, (long) Math.ceil(avgGenerationMillis / 1000));
+    }
+
+    private void reject(String reason) {
+        Counter.builder("rag.admission.rejected")
+                .description("准入控制拒绝的请求数")
+                .tag("reason", reason)
+                .register(registry)
+                .increment();
+    }
+}
@@ -0,0 +1,508 @@
+package com.rag.ragbackend.manager;
+
+import com.rag.ragbackend.config.Bm25Config;
+import com.rag.ragbackend.pojo.dto.RetrievedChunk;
+import com.rag.ragbackend.service.ChromaService;
+import com.rag.ragbackend.utils.LexicalTokenizer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * @Description BM25 倒排索引：倒排表按文档序号差值 + 词频做 varint 压缩，追加写入；删除打墓碑，墓碑比例过高时整理。
+ * 检索持读锁、写入持写锁；快照按 snapshotInterval 定时（有变化时）与关闭时写入，启动时加载，快照不存在则从向量库重建。
+ * 进程异常退出时丢失最后一个间隔内的变化，删除快照即可在下次启动时从向量库重建
+ * @Version 1.0.0
+ * @Date 2026-10-18 19:50
+ * @Author by zjh
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class Bm25Index {
+
+    private static final int MAGIC = 0x424D3235;
+    private static final int FORMAT_VERSION = 1;
+
+    private final Bm25Config config;
+    private final ChromaService chromaService;
+    private final Executor ingestExecutor;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    /** 快照写入串行执行 */
+    private final ReentrantLock saveLock = new ReentrantLock();
+
+    private final Map<String, Postings> terms = new HashMap<>();
+    /** 文档 id → 序号（只含未删除的） */
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    /** 序号 → 文档 id */
+    private final List<String> ids = new ArrayList<>();
+    /** 序号 → 文档词数 */
+    private int[] lengths = new int[1024];
+    private final BitSet deleted = new BitSet();
+    private long totalLength;
+    private int liveCount;
+
+    /** 每次写入（持写锁）加一；与 savedVersion 不同表示有未写入快照的变化 */
+    private volatile long version;
+    private volatile long savedVersion;
+    private volatile boolean snapshotLoaded;
+
+    private ScheduledExecutorService saver;
+
+    private final ThreadLocal<Accumulator> accumulators = ThreadLocal.withInitial(Accumulator::new);
+
+    public record Hit(String id, double score) {
+    }
+
+    @PostConstruct
+    public void start() {
+        load();
+        if (!config.isEnabled()) {
+            return;
+        }
+        saver = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "bm25-snapshot");
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = config.getSnapshotInterval().toMillis();
+        saver.scheduleWithFixedDelay(this::save, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (saver != null) {
+            saver.shutdownNow();
+        }
+        save();
+    }
+
+    public void load() {
+        Path file = Path.of(config.getSnapshotPath());
+        if (!config.isEnabled() || !Files.exists(file)) {
+            return;
+        }
+        lock.writeLock().lock();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                log.warn("BM25 快照格式不匹配，将从向量库重建: {}", file);
+                return;
+            }
+            int docs = in.readInt();
+            lengths = new int[Math.max(1024, docs)];
+            for (int i = 0; i < docs; i++) {
+                String id = in.readUTF();
+                lengths[i] = in.readInt();
+                ids.add(id);
+                if (in.readBoolean()) {
+                    deleted.set(i);
+                } else {
+                    ordinals.put(id, i);
+                    totalLength += lengths[i];
+                    liveCount++;
+                }
+            }
+            int termCount = in.readInt();
+            for (int t = 0; t < termCount; t++) {
+                String term = in.readUTF();
+                Postings postings = new Postings();
+                postings.docFreq = in.readInt();
+                postings.lastDoc = in.readInt();
+                postings.size = in.readInt();
+                postings.data = new byte[Math.max(8, postings.size)];
+                in.readFully(postings.data, 0, postings.size);
+                terms.put(term, postings);
+            }
+            snapshotLoaded = true;
+            log.info("BM25 索引已加载, 文档 {} 个, 词项 {} 个", liveCount, terms.size());
+        } catch (IOException e) {
+            log.warn("BM25 快照读取失败，将从向量库重建: {}", file, e);
+            clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 没有快照（首次启用或快照损坏）时，在入库线程池上从向量库重建
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildIfMissing() {
+        if (!config.isEnabled() || snapshotLoaded) {
+            return;
+        }
+        ingestExecutor.execute(() -> {
+            long begin = System.currentTimeMillis();
+            try {
+                chromaService.forEachChunk(1000, batch -> {
+                    List<Document> documents = new ArrayList<>(batch.size());
+                    for (RetrievedChunk chunk : batch) {
+                        documents.add(new Document(chunk.id(), chunk.text() == null ? "" : chunk.text(), Map.of()));
+                    }
+                    addAll(documents);
+                });
+                save();
+                log.info("BM25 索引重建完成, 文档 {} 个, 耗时 {}ms", size(), System.currentTimeMillis() - begin);
+            } catch (Exception e) {
+                log.warn("BM25 索引重建失败，仅使用向量检索", e);
+            }
+        });
+    }
+
+    /**
+     * 写入文档（同 id 已存在时替换）
+     */
+    public void addAll(Collection<Document> documents) {
+        if (!config.isEnabled() || documents.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (Document doc : documents) {
+                Integer previous = ordinals.get(doc.getId());
+                if (previous != null) {
+                    markDeleted(previous);
+                }
+                List<String> tokens = LexicalTokenizer.tokenize(doc.getText() == null ? "" : doc.getText());
+                int ordinal = ids.size();
+                ids.add(doc.getId());
+                ordinals.put(doc.getId(), ordinal);
+                if (ordinal >= lengths.length) {
+                    lengths = Arrays.copyOf(lengths, lengths.length * 2);
+                }
+                lengths[ordinal] = tokens.size();
+                totalLength += tokens.size();
+                liveCount++;
+
+                Map<String, Integer> frequencies = new HashMap<>();
+                for (String token : tokens) {
+                    frequencies.merge(token, 1, Integer::sum);
+                }
+                for (Map.Entry<String, Integer> e : frequencies.entrySet()) {
+                    terms.computeIfAbsent(e.getKey(), k -> new Postings()).add(ordinal, e.getValue());
+                }
+            }
+            version++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeAll(Collection<String> documentIds) {
+        if (!config.isEnabled() || documentIds.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (String id : documentIds) {
+                Integer ordinal = ordinals.remove(id);
+                if (ordinal != null) {
+                    markDeleted(ordinal);
+                }
+            }
+            if (deleted.cardinality() > config.getCompactRatio() * ids.size()) {
+                compact();
+            }
+            version++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 按 BM25 得分返回前 topK 个文档
+     */
+    public List<Hit> search(String query, int topK) {
+        if (!config.isEnabled() || topK <= 0) {
+            return List.of();
+        }
+        LinkedHashSet<String> queryTerms = new LinkedHashSet<>(LexicalTokenizer.tokenize(query));
+        if (queryTerms.isEmpty()) {
+            return List.of();
+        }
+        double k1 = config.getK1();
+        double b = config.getB();
+        lock.readLock().lock();
+        try {
+            if (liveCount == 0) {
+                return List.of();
+            }
+            double avgLength = Math.max(1.0, (double) totalLength / liveCount);
+            Accumulator acc = accumulators.get();
+            acc.reset(ids.size());
+            for (String term : queryTerms) {
+                Postings postings = terms.get(term);
+                if (postings == null) {
+                    continue;
+                }
+                // docFreq 含已删除文档，整理前略偏大，只影响 idf 的精度
+                int df = Math.min(postings.docFreq, liveCount);
+                double idf = Math.log(1 + (liveCount - df + 0.5) / (df + 0.5));
+                int pos = 0;
+                int doc = -1;
+                while (pos < postings.size) {
+                    long delta = readVarint(postings.data, pos);
+                    pos = (int) (delta >>> 32);
+                    doc += (int) delta;
+                    long tfRead = readVarint(postings.data, pos);
+                    pos = (int) (tfRead >>> 32);
+                    int tf = (int) tfRead;
+                    if (deleted.get(doc)) {
+                        continue;
+                    }
+                    double norm = k1 * (1 - b + b * lengths[doc] / avgLength);
+                    acc.add(doc, (float) (idf * tf * (k1 + 1) / (tf + norm)));
+                }
+            }
+            PriorityQueue<Hit> top = new PriorityQueue<>(topK + 1, (x, y) -> Double.compare(x.score(), y.score()));
+            for (int i = 0; i < acc.touchedCount; i++) {
+                int doc = acc.touched[i];
+                float score = acc.scores[doc];
+                if (top.size() < topK || score > top.peek().score()) {
+                    top.add(new Hit(ids.get(doc), score));
+                    if (top.size() > topK) {
+                        top.poll();
+                    }
+                }
+            }
+            acc.clear();
+            List<Hit> hits = new ArrayList<>(top);
+            hits.sort((x, y) -> Double.compare(y.score(), x.score()));
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 有变化时写快照：多次调用串行执行，先写同目录下的唯一临时文件再原子替换，替换成功后才标记为已保存
+     */
+    public void save() {
+        if (!config.isEnabled() || version == savedVersion) {
+            return;
+        }
+        Path file = Path.of(config.getSnapshotPath()).toAbsolutePath();
+        saveLock.lock();
+        Path tmp = null;
+        try {
+            Files.createDirectories(file.getParent());
+            tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            long snapshotVersion;
+            lock.readLock().lock();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                snapshotVersion = version;
+                writeSnapshot(out);
+            } finally {
+                lock.readLock().unlock();
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            tmp = null;
+            savedVersion = snapshotVersion;
+        } catch (IOException e) {
+            log.warn("BM25 快照写入失败: {}", file, e);
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException e) {
+                    log.debug("BM25 临时快照删除失败: {}", tmp, e);
+                }
+            }
+            saveLock.unlock();
+        }
+    }
+
+    /** 持读锁调用 */
+    private void writeSnapshot(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            out.writeUTF(ids.get(i));
+            out.writeInt(lengths[i]);
+            out.writeBoolean(deleted.get(i));
+        }
+        out.writeInt(terms.size());
+        for (Map.Entry<String, Postings> e : terms.entrySet()) {
+            Postings postings = e.getValue();
+            out.writeUTF(e.getKey());
+            out.writeInt(postings.docFreq);
+            out.writeInt(postings.lastDoc);
+            out.writeInt(postings.size);
+            out.write(postings.data, 0, postings.size);
+        }
+    }
+
+    private void markDeleted(int ordinal) {
+        if (!deleted.get(ordinal)) {
+            deleted.set(ordinal);
+            liveCount--;
+            totalLength -= lengths[ordinal];
+        }
+    }
+
+    /** 去掉已删除文档并重新编号（持写锁调用） */
+    private void compact() {
+        int[] remap = new int[ids.size()];
+        List<String> liveIds = new ArrayList<>(liveCount);
+        int[] liveLengths = new int[Math.max(1024, liveCount)];
+        for (int i = 0; i < ids.size(); i++) {
+            if (deleted.get(i)) {
+                remap[i] = -1;
+            } else {
+                remap[i] = liveIds.size();
+                liveLengths[liveIds.size()] = lengths[i];
+                liveIds.add(ids.get(i));
+            }
+        }
+        terms.replaceAll((term, postings) -> postings.remap(remap));
+        terms.values().removeIf(postings -> postings.docFreq == 0);
+        ids.clear();
+        ids.addAll(liveIds);
+        lengths = liveLengths;
+        deleted.clear();
+        ordinals.clear();
+        for (int i = 0; i < ids.size(); i++) {
+            ordinals.put(ids.get(i), i);
+        }
+        log.info("BM25 索引整理完成, 文档 {} 个, 词项 {} 个", liveCount, terms.size());
+    }
+
+    private void clear() {
+        terms.clear();
+        ordinals.clear();
+        ids.clear();
+        deleted.clear();
+        lengths = new int[1024];
+        totalLength = 0;
+        liveCount = 0;
+    }
+
+    /** 读 varint，返回 (新位置 << 32) | 值 */
+    private static long readVarint(byte[] data, int pos) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[pos++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return ((long) pos << 32) | (value & 0xFFFFFFFFL);
+    }
+
+    /** 一个词的倒排表：[文档序号差值 varint][词频 varint]... */
+    private static final class Postings {
+
+        byte[] data = new byte[8];
+        int size;
+        int lastDoc = -1;
+        int docFreq;
+
+        void add(int doc, int tf) {
+            writeVarint(doc - lastDoc);
+            writeVarint(tf);
+            lastDoc = doc;
+            docFreq++;
+        }
+
+        Postings remap(int[] remap) {
+            Postings out = new Postings();
+            int pos = 0;
+            int doc = -1;
+            while (pos < size) {
+                long delta = readVarint(data, pos);
+                pos = (int) (delta >>> 32);
+                doc += (int) delta;
+                long tf = readVarint(data, pos);
+                pos = (int) (tf >>> 32);
+                if (remap[doc] >= 0) {
+                    out.add(remap[doc], (int) tf);
+                }
+            }
+            return out;
+        }
+
+        private void writeVarint(int value) {
+            if (size + 5 > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, size + 5));
+            }
+            while ((value & ~0x7F) != 0) {
+                data[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[size++] = (byte) value;
+        }
+    }
+
+    /** 每线程复用的得分累加器，只清理本次触达的文档 */
+    private static final class Accumulator {
+
+        float[] scores = new float[0];
+        int[] touched = new int[64];
+        int touchedCount;
+
+        void reset(int capacity) {
+            if (scores.length < capacity) {
+                scores = new float[capacity];
+            }
+            touchedCount = 0;
+        }
+
+        void add(int doc, float score) {
+            if (scores[doc] == 0f) {
+                if (touchedCount == touched.length) {
+                    touched = Arrays.copyOf(touched, touchedCount * 2);
+                }
+                touched[touchedCount++] = doc;
+            }
+            scores[doc] += score;
+        }
+
+        void clear() {
+            for (int i = 0; i < touchedCount; i++) {
+                scores[touched[i]] = 0f;
+            }
+            touchedCount = 0;
+        }
+    }
+}
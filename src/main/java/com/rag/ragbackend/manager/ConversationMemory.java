@@ -0,0 +1,201 @@
+package com.rag.ragbackend.manager;
+
+import com.rag.ragbackend.config.ConversationConfig;
+import com.rag.ragbackend.pojo.dto.ConversationTurn;
+import com.rag.ragbackend.service.ChatService;
+import com.rag.ragbackend.utils.TokenEstimator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description 多轮会话记忆，存于 Redis：
+ * - rag:conv:{sessionId}:turns 未摘要的轮次（列表，右端追加）
+ * - rag:conv:{sessionId}:summary 较早轮次合并后的摘要
+ * <p>
+ * 写入在回答完成后异步进行；未摘要轮次超过 summarizeThreshold 时在后台把最近 keepRecentTurns 轮之前的轮次
+ * 与旧摘要合并成新摘要，再从列表左端裁掉，期间新追加的轮次不受影响。
+ * 请求路径上只读取一次（与检索并行），渲染时按 maxHistoryTokens 截断，prompt 大小与会话长度无关
+ * @Version 1.0.0
+ * @Date 2026-10-18 21:30
+ * @Author by zjh
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ConversationMemory {
+
+    private static final String KEY_PREFIX = "rag:conv:";
+
+    private final ConversationConfig conversationConfig;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final ChatService chatService;
+    private final DownstreamLimiter downstreamLimiter;
+    private final Executor retrievalExecutor;
+    private final Executor bizExecutor;
+
+    /**
+     * 会话历史：摘要 + 未摘要的轮次（按时间顺序）
+     */
+    public record History(String summary, List<ConversationTurn> turns) {
+
+        public static final History EMPTY = new History(null, List.of());
+
+        public boolean isEmpty() {
+            return (summary == null || summary.isBlank()) && turns.isEmpty();
+        }
+
+        /**
+         * 渲染成 prompt 片段：摘要优先，其余预算从最近一轮往前填，放不下的更早轮次丢弃
+         */
+        public String render(int maxTokens) {
+            if (isEmpty()) {
+                return "";
+            }
+            int remaining = maxTokens;
+            String head = "";
+            if (summary != null && !summary.isBlank()) {
+                head = "（之前对话的摘要）" + summary + "\n";
+                remaining -= TokenEstimator.estimate(head);
+            }
+            Deque<String> lines = new ArrayDeque<>();
+            for (int i = turns.size() - 1; i >= 0 && remaining > 0; i--) {
+                ConversationTurn turn = turns.get(i);
+                String line = "用户：" + turn.getQuestion() + "\n助手：" + turn.getAnswer() + "\n";
+                int cost = TokenEstimator.estimate(line);
+                if (cost > remaining) {
+                    if (lines.isEmpty()) {
+                        // 最近一轮本身超出预算，保留开头部分
+                        lines.addFirst(line.substring(0, TokenEstimator.indexOfBudget(line, 0, line.length(), remaining)) + "…\n");
+                    }
+                    break;
+                }
+                lines.addFirst(line);
+                remaining -= cost;
+            }
+            return head + String.join("", lines);
+        }
+    }
+
+    /**
+     * 在检索线程池上读取历史，调用方与向量化、检索并行等待；sessionId 为空或未启用时直接返回空历史
+     */
+    public CompletableFuture<History> loadAsync(String sessionId) {
+        if (!conversationConfig.isEnabled() || sessionId == null || sessionId.isBlank()) {
+            return CompletableFuture.completedFuture(History.EMPTY);
+        }
+        return CompletableFuture.supplyAsync(() -> load(sessionId), retrievalExecutor)
+                .completeOnTimeout(History.EMPTY, conversationConfig.getLoadTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                .exceptionally(e -> {
+                    log.warn("读取会话历史失败, sessionId: {}", sessionId, e);
+                    return History.EMPTY;
+                });
+    }
+
+    private History load(String sessionId) {
+        Object summary = downstreamLimiter.call(DownstreamLimiter.Downstream.REDIS,
+                () -> redisTemplate.opsForValue().get(summaryKey(sessionId)));
+        List<Object> raw = downstreamLimiter.call(DownstreamLimiter.Downstream.REDIS,
+                () -> redisTemplate.opsForList().range(turnsKey(sessionId), 0, -1));
+        List<ConversationTurn> turns = new ArrayList<>();
+        if (raw != null) {
+            for (Object o : raw) {
+                if (o instanceof ConversationTurn turn) {
+                    turns.add(turn);
+                }
+            }
+        }
+        return new History(summary == null ? null : summary.toString(), turns);
+    }
+
+    /**
+     * 回答完成后异步追加一轮，必要时在后台摘要
+     */
+    public void append(String sessionId, String question, String answer) {
+        if (!conversationConfig.isEnabled() || sessionId == null || sessionId.isBlank()) {
+            return;
+        }
+        ConversationTurn turn = new ConversationTurn(question, stripThinking(answer));
+        CompletableFuture.runAsync(() -> {
+            String key = turnsKey(sessionId);
+            redisTemplate.opsForList().rightPush(key, turn);
+            redisTemplate.expire(key, conversationConfig.getTtl());
+            redisTemplate.expire(summaryKey(sessionId), conversationConfig.getTtl());
+            summarizeIfNeeded(sessionId);
+        }, bizExecutor).exceptionally(e -> {
+            log.warn("保存会话历史失败, sessionId: {}", sessionId, e);
+            return null;
+        });
+    }
+
+    private void summarizeIfNeeded(String sessionId) {
+        History history = load(sessionId);
+        int keep = Math.max(0, conversationConfig.getKeepRecentTurns());
+        int tokens = 0;
+        for (ConversationTurn turn : history.turns()) {
+            tokens += TokenEstimator.estimate(turn.getQuestion()) + TokenEstimator.estimate(turn.getAnswer());
+        }
+        int count = history.turns().size() - keep;
+        if (tokens <= conversationConfig.getSummarizeThreshold() || count <= 0) {
+            return;
+        }
+        // 同一会话同时只有一个摘要任务（跨实例），抢不到的直接跳过，下一轮再触发
+        String lockKey = KEY_PREFIX + sessionId + ":summarizing";
+        Boolean locked = redisTemplate.opsForValue().setIfAbsent(lockKey, 1, 2, TimeUnit.MINUTES);
+        if (!Boolean.TRUE.equals(locked)) {
+            return;
+        }
+        try {
+            long begin = System.nanoTime();
+            String summary = summarize(history.summary(), history.turns().subList(0, count));
+            redisTemplate.opsForValue().set(summaryKey(sessionId), summary, conversationConfig.getTtl());
+            // 只裁掉已摘要的轮次，摘要期间右端新追加的保留
+            redisTemplate.opsForList().trim(turnsKey(sessionId), count, -1);
+            log.info("会话摘要完成, sessionId: {}, 合并 {} 轮, token {} -> {}, 耗时 {}ms", sessionId, count, tokens,
+                    TokenEstimator.estimate(summary), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+        } finally {
+            redisTemplate.delete(lockKey);
+        }
+    }
+
+    private String summarize(String previous, List<ConversationTurn> turns) {
+        StringBuilder dialog = new StringBuilder();
+        for (ConversationTurn turn : turns) {
+            dialog.append("用户：").append(turn.getQuestion()).append("\n助手：").append(turn.getAnswer()).append("\n");
+        }
+        int budget = conversationConfig.getSummaryMaxTokens();
+        String prompt = """
+                请把下面的已有摘要和后续对话合并成一段不超过 %d 字的摘要，保留用户关心的对象、条件和已得出的结论，不要添加对话以外的内容：
+                
+                【已有摘要】
+                %s
+                
+                【后续对话】
+                %s
+                """.formatted(budget, previous == null ? "无" : previous, dialog);
+        String summary = stripThinking(chatService.callChatRag(prompt));
+        return summary.substring(0, TokenEstimator.indexOfBudget(summary, 0, summary.length(), budget));
+    }
+
+    /** 推理模型输出的 <think> 段不存入历史 */
+    private static String stripThinking(String text) {
+        return text == null ? "" : text.replaceAll("(?s)<think>.*?</think>", "").strip();
+    }
+
+    private static String turnsKey(String sessionId) {
+        return KEY_PREFIX + sessionId + ":turns";
+    }
+
+    private static String summaryKey(String sessionId) {
+        return KEY_PREFIX + sessionId + ":summary";
+    }
+}
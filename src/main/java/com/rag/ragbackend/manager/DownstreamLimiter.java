@@ -0,0 +1,105 @@
+package com.rag.ragbackend.manager;
+
+import com.rag.ragbackend.config.DownstreamConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * @Description 下游并发限制：每个下游一个公平信号量，调用前获取许可、结束后释放。
+ * 虚拟线程下线程数不再是瓶颈，由这里保证不会把 Ollama / Chroma / Redis 压垮；平台线程模式下同样生效
+ * @Version 1.0.0
+ * @Date 2026-10-18 23:00
+ * @Author by zjh
+ */
+@Slf4j
+@Component
+public class DownstreamLimiter {
+
+    public enum Downstream {
+        OLLAMA_CHAT, OLLAMA_EMBED, CHROMA, REDIS
+    }
+
+    private final DownstreamConfig downstreamConfig;
+
+    private final Map<Downstream, Semaphore> semaphores = new EnumMap<>(Downstream.class);
+
+    public DownstreamLimiter(DownstreamConfig downstreamConfig) {
+        this.downstreamConfig = downstreamConfig;
+        semaphores.put(Downstream.OLLAMA_CHAT, new Semaphore(downstreamConfig.getOllamaChatPermits(), true));
+        semaphores.put(Downstream.OLLAMA_EMBED, new Semaphore(downstreamConfig.getOllamaEmbedPermits(), true));
+        semaphores.put(Downstream.CHROMA, new Semaphore(downstreamConfig.getChromaPermits(), true));
+        semaphores.put(Downstream.REDIS, new Semaphore(downstreamConfig.getRedisPermits(), true));
+    }
+
+    public <T> T call(Downstream downstream, Supplier<T> call) {
+        Semaphore semaphore = acquire(downstream);
+        try {
+            return call.get();
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    public void run(Downstream downstream, Runnable call) {
+        Semaphore semaphore = acquire(downstream);
+        try {
+            call.run();
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    /**
+     * 流式调用：订阅时获取许可（方式同 mono，不阻塞订阅线程），完成、出错或取消时释放
+     */
+    public <T> Flux<T> stream(Downstream downstream, Supplier<Flux<T>> call) {
+        return Flux.usingWhen(permit(downstream), semaphore -> call.get(),
+                semaphore -> Mono.fromRunnable(semaphore::release));
+    }
+
+    /**
+     * 非阻塞调用：有空闲许可时直接发起，否则在 boundedElastic 上等待许可，不阻塞事件循环；完成、出错或取消时释放
+     */
+    public <T> Mono<T> mono(Downstream downstream, Supplier<Mono<T>> call) {
+        return Mono.usingWhen(permit(downstream), semaphore -> call.get(),
+                semaphore -> Mono.fromRunnable(semaphore::release));
+    }
+
+    private Mono<Semaphore> permit(Downstream downstream) {
+        return Mono.defer(() -> {
+            Semaphore semaphore = semaphores.get(downstream);
+            return semaphore.tryAcquire() ? Mono.just(semaphore)
+                    : Mono.fromCallable(() -> acquire(downstream)).subscribeOn(Schedulers.boundedElastic());
+        });
+    }
+
+    /** 当前可用许可数 */
+    public int available(Downstream downstream) {
+        return semaphores.get(downstream).availablePermits();
+    }
+
+    private Semaphore acquire(Downstream downstream) {
+        Semaphore semaphore = semaphores.get(downstream);
+        try {
+            if (!semaphore.tryAcquire(downstreamConfig.getAcquireTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+                log.warn("{} 并发已满, 等待 {}ms 未获取到许可", downstream, downstreamConfig.getAcquireTimeout().toMillis());
+                // 与准入控制的拒绝一致：同步接口返回 429，流式接口以带 retryAfter 的 error 事件结束
+                throw new AdmissionGate.RejectedException(downstream + " 繁忙，请稍后重试",
+                        Math.max(1, downstreamConfig.getAcquireTimeout().toSeconds()));
+            }
+            return semaphore;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("等待 " + downstream + " 许可被中断", e);
+        }
+    }
+}
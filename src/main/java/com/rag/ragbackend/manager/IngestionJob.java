@@ -0,0 +1,97 @@
+package com.rag.ragbackend.manager;
+
+import com.rag.ragbackend.pojo.dto.IngestionStats;
+import com.rag.ragbackend.pojo.resp.IngestionProgress;
+import com.rag.ragbackend.service.IngestionListener;
+import lombok.Getter;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * @Description 一个异步入库任务：保存状态与最新统计，作为 IngestionListener 接收流水线进度并按间隔推送
+ * @Version 1.0.0
+ * @Date 2026-10-18 14:45
+ * @Author by zjh
+ */
+@Getter
+public class IngestionJob implements IngestionListener {
+
+    public enum Status {
+        QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED;
+
+        public boolean isFinished() {
+            return this == SUCCEEDED || this == FAILED || this == CANCELLED;
+        }
+    }
+
+    private final String jobId;
+    private final String filename;
+    private final Path file;
+    /** 附加到每个 chunk 上的元数据（租户、标签） */
+    private final Map<String, Object> metadata;
+    private final long progressIntervalNanos;
+    private final Consumer<IngestionJob> progressSink;
+
+    private volatile Status status = Status.QUEUED;
+    private volatile IngestionStats stats;
+    private volatile String error;
+    private volatile boolean cancelled;
+    private volatile long finishedAt;
+    private volatile long lastPushNanos;
+
+    public IngestionJob(String jobId, String filename, Path file, Map<String, Object> metadata,
+                        long progressIntervalMillis, Consumer<IngestionJob> progressSink) {
+        this.jobId = jobId;
+        this.filename = filename;
+        this.file = file;
+        this.metadata = metadata;
+        this.progressIntervalNanos = progressIntervalMillis * 1_000_000L;
+        this.progressSink = progressSink;
+    }
+
+    /** 流水线回调：更新统计，距上次推送超过间隔时推送一次进度 */
+    @Override
+    public void onProgress(IngestionStats stats) {
+        this.stats = stats;
+        long now = System.nanoTime();
+        if (now - lastPushNanos >= progressIntervalNanos) {
+            lastPushNanos = now;
+            progressSink.accept(this);
+        }
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /** 请求取消，返回 false 表示任务已结束 */
+    public boolean cancel() {
+        if (status.isFinished()) {
+            return false;
+        }
+        cancelled = true;
+        return true;
+    }
+
+    void markRunning() {
+        status = Status.RUNNING;
+    }
+
+    void markFinished(Status status, String error) {
+        this.error = error;
+        this.finishedAt = System.currentTimeMillis();
+        this.status = status;
+    }
+
+    public IngestionProgress snapshot() {
+        IngestionStats s = stats;
+        if (s == null) {
+            return new IngestionProgress(jobId, filename, status.name(), 0, 0, 0, 0, 0, 0, error);
+        }
+        return new IngestionProgress(jobId, filename, status.name(), s.getChunked(), s.getSkipped(), s.getEmbedded(),
+                s.getStored(), s.overallRate(), s.getElapsedMillis(), error);
+    }
+}
@@ -0,0 +1,152 @@
+package com.rag.ragbackend.manager;
+
+import com.rag.ragbackend.config.IngestionConfig;
+import com.rag.ragbackend.pojo.dto.RetrievalOptions;
+import com.rag.ragbackend.pojo.resp.IngestionProgress;
+import com.rag.ragbackend.pojo.resp.SseMessage;
+import com.rag.ragbackend.service.DataUploadService;
+import com.rag.ragbackend.utils.MD5Util;
+import com.rag.ragbackend.utils.TextExtractor;
+import com.rag.ragbackend.utils.TextSegments;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * @Description 异步入库任务管理：上传请求只负责落盘并返回 jobId，解析/切分/向量化/写入在 ingestExecutor 上执行，
+ * 进度通过 SseEmitterManager 以 jobId 推送
+ * @Version 1.0.0
+ * @Date 2026-10-18 14:50
+ * @Author by zjh
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class IngestionJobManager {
+
+    private final DataUploadService uploadService;
+
+    private final IngestionConfig ingestionConfig;
+
+    private final SseEmitterManager sseManager;
+
+    private final Executor ingestExecutor;
+
+    private final Map<String, IngestionJob> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * 提交入库任务，file 为已落盘的上传文件，任务结束后删除；tenant、tags 可为空，写入每个 chunk 的元数据用于检索过滤
+     */
+    public IngestionJob submit(String filename, Path file, String tenant, List<String> tags) {
+        purgeFinished();
+        String jobId = MD5Util.md5WithUUIDSalt(filename);
+        IngestionJob job = new IngestionJob(jobId, filename, file, chunkMetadata(tenant, tags),
+                ingestionConfig.getJobProgressInterval().toMillis(), this::push);
+        jobs.put(jobId, job);
+        sseManager.create(jobId);
+        try {
+            ingestExecutor.execute(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(jobId);
+            sseManager.complete(jobId);
+            deleteQuietly(file);
+            throw new RuntimeException("入库任务队列已满，请稍后重试", e);
+        }
+        log.info("入库任务已提交, jobId: {}, 文件: {}", jobId, filename);
+        return job;
+    }
+
+    public IngestionJob get(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    /** 取消任务：排队中的任务不再执行，运行中的任务在下一个批次边界停止 */
+    public boolean cancel(String jobId) {
+        IngestionJob job = jobs.get(jobId);
+        return job != null && job.cancel();
+    }
+
+    private void run(IngestionJob job) {
+        try {
+            if (job.isCancelled()) {
+                finish(job, IngestionJob.Status.CANCELLED, null);
+                return;
+            }
+            job.markRunning();
+            push(job);
+            try (TextSegments segments = open(job)) {
+                int chunks = uploadService.indexDocument(job.getFilename(), job.getMetadata(), segments, job);
+                log.info("入库任务完成, jobId: {}, chunks: {}", job.getJobId(), chunks);
+                finish(job, IngestionJob.Status.SUCCEEDED, null);
+            }
+        } catch (CancellationException e) {
+            log.info("入库任务已取消, jobId: {}", job.getJobId());
+            finish(job, IngestionJob.Status.CANCELLED, null);
+        } catch (Exception e) {
+            log.error("入库任务失败, jobId: {}", job.getJobId(), e);
+            finish(job, IngestionJob.Status.FAILED, e.getMessage());
+        } finally {
+            deleteQuietly(job.getFile());
+        }
+    }
+
+    private static Map<String, Object> chunkMetadata(String tenant, List<String> tags) {
+        Map<String, Object> metadata = new HashMap<>();
+        if (tenant != null && !tenant.isBlank()) {
+            metadata.put(RetrievalOptions.TENANT, tenant.trim());
+        }
+        if (tags != null) {
+            for (String tag : tags) {
+                if (tag != null && !tag.isBlank()) {
+                    metadata.put(RetrievalOptions.tagKey(tag.trim()), true);
+                }
+            }
+        }
+        return metadata;
+    }
+
+    private TextSegments open(IngestionJob job) throws IOException {
+        if (job.getFilename().endsWith(".pdf")) {
+            return TextExtractor.openPdf(job.getFile().toFile(), ingestionConfig.getPdfPagesPerSegment(),
+                    ingestionConfig.getPdfMaxMainMemory().toBytes());
+        }
+        return TextExtractor.openText(Files.newInputStream(job.getFile()), ingestionConfig.getTextSegmentChars());
+    }
+
+    private void finish(IngestionJob job, IngestionJob.Status status, String error) {
+        job.markFinished(status, error);
+        push(job);
+        sseManager.send(job.getJobId(), SseMessage.done());
+        sseManager.complete(job.getJobId());
+    }
+
+    private void push(IngestionJob job) {
+        IngestionProgress progress = job.snapshot();
+        sseManager.send(job.getJobId(), progress);
+    }
+
+    /** 清理超过保留时间的已结束任务 */
+    private void purgeFinished() {
+        long deadline = System.currentTimeMillis() - ingestionConfig.getJobRetention().toMillis();
+        jobs.values().removeIf(job -> job.getStatus().isFinished() && job.getFinishedAt() < deadline);
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("临时文件删除失败: {}", file, e);
+        }
+    }
+}
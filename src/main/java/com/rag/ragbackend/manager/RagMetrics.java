@@ -0,0 +1,171 @@
+package com.rag.ragbackend.manager;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * @Description RAG 流水线指标（Micrometer，经 Actuator 以 Prometheus 格式暴露）：
+ * - rag.embedding / rag.retrieval / rag.prompt：问题向量化、检索、上下文压缩与 prompt 拼装耗时
+ * - rag.generation.ttft：从收到问题到第一个 token 的耗时；rag.generation：调用大模型的整次生成耗时（outcome 区分完成/出错/取消）
+ * - rag.generation.tokens.per.second：生成速度
+ * - rag.generation.cancelled：因客户端断开、连接超时、主动取消而中止的生成（reason 区分）
+ * - rag.ingestion.stage / rag.ingestion.chunks：入库各阶段（split/embed/store）耗时与 chunk 数
+ * 问答指标带 endpoint（入口）与 model 标签
+ * @Version 1.0.0
+ * @Date 2026-10-18 23:30
+ * @Author by zjh
+ */
+@Slf4j
+@Component
+public class RagMetrics {
+
+    private final MeterRegistry registry;
+    private final String chatModel;
+    private final String embeddingModel;
+
+    public RagMetrics(MeterRegistry registry,
+                      @Value("${spring.ai.ollama.chat.options.model}") String chatModel,
+                      @Value("${spring.ai.ollama.embedding.options.model}") String embeddingModel) {
+        this.registry = registry;
+        this.chatModel = chatModel;
+        this.embeddingModel = embeddingModel;
+    }
+
+    public <T> T embedding(String endpoint, Supplier<T> call) {
+        return timer("rag.embedding", "问题向量化耗时", endpoint, embeddingModel).record(call);
+    }
+
+    public <T> T retrieval(String endpoint, Supplier<T> call) {
+        return timer("rag.retrieval", "检索耗时（含混合检索与重排）", endpoint, chatModel).record(call);
+    }
+
+    /**
+     * 非阻塞检索：从订阅到结果返回的耗时
+     */
+    public <T> Mono<T> retrieval(String endpoint, Mono<T> call) {
+        Timer timer = timer("rag.retrieval", "检索耗时（含混合检索与重排）", endpoint, chatModel);
+        return call.elapsed().map(timed -> {
+            timer.record(timed.getT1(), TimeUnit.MILLISECONDS);
+            return timed.getT2();
+        });
+    }
+
+    public <T> T prompt(String endpoint, Supplier<T> call) {
+        return timer("rag.prompt", "上下文压缩与 prompt 拼装耗时", endpoint, chatModel).record(call);
+    }
+
+    /**
+     * 为生成流记录首 token 耗时（从 requestStart 起算）、总耗时与生成速度（从订阅起算）
+     */
+    public Flux<String> generation(String endpoint, long requestStart, Flux<String> tokens) {
+        return Flux.defer(() -> {
+            long begin = System.nanoTime();
+            AtomicBoolean first = new AtomicBoolean(true);
+            AtomicInteger count = new AtomicInteger();
+            return tokens
+                    .doOnNext(token -> {
+                        if (first.compareAndSet(true, false)) {
+                            timer("rag.generation.ttft", "首 token 耗时", endpoint, chatModel)
+                                    .record(System.nanoTime() - requestStart, TimeUnit.NANOSECONDS);
+                        }
+                        count.incrementAndGet();
+                    })
+                    .doFinally(signal -> {
+                        long nanos = System.nanoTime() - begin;
+                        generationTimer(endpoint, outcome(signal)).record(nanos, TimeUnit.NANOSECONDS);
+                        if (signal == SignalType.ON_COMPLETE && count.get() > 0 && nanos > 0) {
+                            DistributionSummary.builder("rag.generation.tokens.per.second")
+                                    .description("生成速度（流式片段数/秒，近似 token/s）")
+                                    .tags("endpoint", endpoint, "model", chatModel)
+                                    .register(registry)
+                                    .record(count.get() * 1e9 / nanos);
+                        }
+                    });
+        });
+    }
+
+    /**
+     * 生成被中止：reason 为 disconnect / timeout / cancel / evicted
+     */
+    public void cancelled(String endpoint, String reason) {
+        Counter.builder("rag.generation.cancelled")
+                .description("中止的生成数")
+                .tags("endpoint", endpoint, "model", chatModel, "reason", reason)
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * 非流式生成：整次调用同时计入首 token 与总耗时
+     */
+    public String generation(String endpoint, long requestStart, Supplier<String> call) {
+        long begin = System.nanoTime();
+        String outcome = "error";
+        try {
+            String answer = call.get();
+            outcome = "complete";
+            return answer;
+        } finally {
+            long now = System.nanoTime();
+            generationTimer(endpoint, outcome).record(now - begin, TimeUnit.NANOSECONDS);
+            if ("complete".equals(outcome)) {
+                timer("rag.generation.ttft", "首 token 耗时", endpoint, chatModel)
+                        .record(now - requestStart, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * 入库阶段：stage 为 split / embed / store
+     */
+    public void ingestion(String stage, int chunks, long nanos) {
+        Timer.builder("rag.ingestion.stage")
+                .description("入库各阶段每批耗时")
+                .tag("stage", stage)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        Counter.builder("rag.ingestion.chunks")
+                .description("入库各阶段处理的 chunk 数")
+                .tag("stage", stage)
+                .register(registry)
+                .increment(chunks);
+    }
+
+    private Timer timer(String name, String description, String endpoint, String model) {
+        return Timer.builder(name)
+                .description(description)
+                .tags("endpoint", endpoint, "model", model)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private Timer generationTimer(String endpoint, String outcome) {
+        return Timer.builder("rag.generation")
+                .description("整次生成耗时")
+                .tags("endpoint", endpoint, "model", chatModel, "outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private static String outcome(SignalType signal) {
+        return switch (signal) {
+            case ON_COMPLETE -> "complete";
+            case ON_ERROR -> "error";
+            case CANCEL -> "cancel";
+            default -> signal.name().toLowerCase();
+        };
+    }
+}
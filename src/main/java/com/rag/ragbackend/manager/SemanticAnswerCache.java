@@ -0,0 +1,161 @@
+package com.rag.ragbackend.manager;
+
+import com.rag.ragbackend.config.AnswerCacheConfig;
+import com.rag.ragbackend.utils.VectorUtil;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * @Description 语义答案缓存：以问题向量为 key，余弦相似度超过阈值即返回已生成的答案。
+ * 条目数有限（默认 1024），查找为顺序扫描归一化向量的点积；知识库一旦变化（入库/删除）整体失效。
+ * 答案按检索过滤条件（filterKey）隔离，不同租户/文档范围的答案互不命中
+ * @Version 1.0.0
+ * @Date 2026-10-18 16:55
+ * @Author by zjh
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SemanticAnswerCache {
+
+    private final AnswerCacheConfig cacheConfig;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** 按写入顺序排列，满了淘汰最早的 */
+    private final List<Entry> entries = new ArrayList<>();
+
+    /** 知识库版本，每次变化加一 */
+    private final AtomicLong kbVersion = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private record Entry(float[] vector, String filterKey, String answer, long createdAt) {
+    }
+
+    /**
+     * 当前知识库版本，生成前取一次，写入时携带，避免把基于旧知识库生成的答案写进来
+     */
+    public long version() {
+        return kbVersion.get();
+    }
+
+    /**
+     * 查找同一过滤条件下相似问题的答案，未命中返回 null
+     */
+    public String lookup(float[] questionVector, String filterKey) {
+        if (!cacheConfig.isEnabled() || questionVector.length == 0) {
+            return null;
+        }
+        float[] query = VectorUtil.normalize(questionVector);
+        long expireBefore = System.currentTimeMillis() - cacheConfig.getTtl().toMillis();
+        float threshold = (float) cacheConfig.getSimilarityThreshold();
+        Entry best = null;
+        float bestScore = threshold;
+        lock.readLock().lock();
+        try {
+            for (Entry entry : entries) {
+                if (entry.createdAt() < expireBefore || entry.vector().length != query.length
+                        || !entry.filterKey().equals(filterKey)) {
+                    continue;
+                }
+                float score = VectorUtil.dot(query, entry.vector());
+                if (score >= bestScore) {
+                    best = entry;
+                    bestScore = score;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (best == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        log.debug("语义缓存命中, similarity={}", bestScore);
+        return best.answer();
+    }
+
+    /**
+     * 写入答案；version 为生成开始时的知识库版本，期间知识库有变化则丢弃
+     */
+    public void put(float[] questionVector, String filterKey, String answer, long version) {
+        if (!cacheConfig.isEnabled() || questionVector.length == 0 || answer == null || answer.isEmpty()) {
+            return;
+        }
+        Entry entry = new Entry(VectorUtil.normalize(questionVector), filterKey, answer,
+                System.currentTimeMillis());
+        lock.writeLock().lock();
+        try {
+            if (version != kbVersion.get()) {
+                return;
+            }
+            long expireBefore = entry.createdAt() - cacheConfig.getTtl().toMillis();
+            entries.removeIf(e -> e.createdAt() < expireBefore);
+            if (entries.size() >= cacheConfig.getMaxEntries() && !entries.isEmpty()) {
+                entries.remove(0);
+            }
+            entries.add(entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 知识库发生变化：清空缓存并提升版本
+     */
+    public void invalidateAll() {
+        lock.writeLock().lock();
+        try {
+            kbVersion.incrementAndGet();
+            entries.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 把缓存的答案切成小片段，用于在 SSE 上快速回放
+     */
+    public List<String> replayChunks(String answer) {
+        int size = Math.max(1, cacheConfig.getReplayChunkChars());
+        List<String> chunks = new ArrayList<>(answer.length() / size + 1);
+        int i = 0;
+        while (i < answer.length()) {
+            int end = Math.min(answer.length(), i + size);
+            // 不把代理对拆开
+            if (end < answer.length() && Character.isHighSurrogate(answer.charAt(end - 1))) {
+                end++;
+            }
+            chunks.add(answer.substring(i, end));
+            i = end;
+        }
+        return chunks;
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
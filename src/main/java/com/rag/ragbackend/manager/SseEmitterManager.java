@@ -1,45 +1,474 @@
 package com.rag.ragbackend.manager;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rag.ragbackend.config.SseConfig;
+import com.rag.ragbackend.pojo.dto.SseStats;
+import com.rag.ragbackend.pojo.resp.SseMessage;
+import reactor.core.Disposable;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * @Description SSE 任务注册表：任务与连接分离。
+ * <p>
+ * create 登记任务，send 给事件分配递增序号并写入任务的环形缓冲（按条数和字节数限长，超出丢弃最早的），
+ * 有客户端连接时同时推送。客户端连接（或断线后带 Last-Event-ID 重连）时先补发序号之后的缓冲事件，再接收实时事件，
+ * 任务开始生成到客户端连上之间产生的事件也不会丢。
+ * 任务完成后缓冲保留到空闲超时，供断线的客户端重连取回结尾；没有客户端连接且空闲超过 idleTtl 的任务由后台扫描淘汰。
+ * 启用跨实例转发时事件同时按序提交给 SseRelay，连接落在没有该任务的实例上时由 SseRelay 转发。
+ * <p>
+ * 绑定了上游生成订阅（bind）的任务可以取消：主动取消（cancel），或本实例与其他实例都没有客户端连接
+ * （从未连上，或断开、超时后未重连）超过 disconnectGrace 时取消上游，不再继续消耗模型算力；
+ * 宽限期内带 Last-Event-ID 重连的客户端不受影响
+ * @Version 1.0.0
+ * @Date 2026-10-18 22:00
+ * @Author by zjh
+ */
+@Slf4j
 @Component
+@RequiredArgsConstructor
 public class SseEmitterManager {
 
-    private final Map<String, SseEmitter> emitters = new ConcurrentHashMap<>();
+    private final SseConfig sseConfig;
+    private final ObjectMapper objectMapper;
+    private final SseRelay sseRelay;
+    private final RagMetrics ragMetrics;
 
-    public SseEmitter create(String taskId) {
-        SseEmitter emitter = new SseEmitter(0L); // 永不超时
-        emitters.put(taskId, emitter);
+    private final Map<String, Task> tasks = new ConcurrentHashMap<>();
 
-        emitter.onCompletion(() -> emitters.remove(taskId));
-        emitter.onTimeout(() -> emitters.remove(taskId));
-        emitter.onError(e -> emitters.remove(taskId));
+    /** 所有任务缓冲的字节数 */
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    private final AtomicLong bufferedEvents = new AtomicLong();
+    private final LongAdder evicted = new LongAdder();
 
-        return emitter;
+    private ScheduledExecutorService sweeper;
+
+    private record Event(long id, String json, int bytes) {
+    }
+
+    /**
+     * 单个任务：事件缓冲 + 当前连接，所有状态在 lock 下读写。
+     * 用 ReentrantLock 而非 synchronized：持锁期间会写 socket，虚拟线程在 synchronized 内阻塞会占住载体线程
+     */
+    private final class Task {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final ArrayDeque<Event> buffer = new ArrayDeque<>();
+        private long nextId = 1;
+        private int bytes;
+        private SseEmitter emitter;
+        private boolean finished;
+        private volatile long lastActive = System.currentTimeMillis();
+        /** 上一帧跨实例提交的结果，下一帧在其完成后提交，保证顺序 */
+        private CompletableFuture<Void> relayed = CompletableFuture.completedFuture(null);
+        private final String taskId;
+        /** 上游生成的订阅，bind 后才可取消；不绑定的任务（如入库进度）只推送事件 */
+        private Disposable upstream;
+        /** 其他实例上转发该任务的连接数 */
+        private int remoteWatchers;
+        /** 最近一次失去全部连接的时间，未连接过时为创建时间 */
+        private long detachedAt = System.currentTimeMillis();
+
+        Task(String taskId) {
+            this.taskId = taskId;
+        }
+
+        void append(String json) {
+            lock.lock();
+            try {
+                int size = json.getBytes(StandardCharsets.UTF_8).length;
+                Event event = new Event(nextId++, json, size);
+                buffer.addLast(event);
+                bytes += size;
+                bufferedBytes.addAndGet(size);
+                bufferedEvents.incrementAndGet();
+                while (buffer.size() > 1 && (buffer.size() > sseConfig.getMaxEvents() || bytes > sseConfig.getMaxBufferBytes())) {
+                    drop(buffer.removeFirst());
+                }
+                lastActive = System.currentTimeMillis();
+                relay(new SseRelay.Frame(event.id(), json, false));
+                if (emitter != null && !deliver(emitter, event)) {
+                    emitter = null;
+                    lost();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /** 连接新的客户端：替换旧连接，补发 lastEventId 之后的事件；任务已完成则补发后直接结束 */
+        void attach(SseEmitter next, long lastEventId) {
+            lock.lock();
+            try {
+                if (emitter != null) {
+                    emitter.complete();
+                }
+                emitter = next;
+                lastActive = System.currentTimeMillis();
+                Event first = buffer.peekFirst();
+                if (first != null && first.id() > lastEventId + 1) {
+                    log.debug("SSE 续传有缺口, 请求 {} 之后, 缓冲从 {} 开始", lastEventId, first.id());
+                }
+                for (Event event : buffer) {
+                    if (event.id() > lastEventId && !deliver(next, event)) {
+                        emitter = null;
+                        lost();
+                        return;
+                    }
+                }
+                if (finished) {
+                    next.complete();
+                    emitter = null;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void detach(SseEmitter closed) {
+            lock.lock();
+            try {
+                if (emitter == closed) {
+                    emitter = null;
+                    lastActive = System.currentTimeMillis();
+                    lost();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void finish() {
+            lock.lock();
+            try {
+                if (!finished) {
+                    relay(new SseRelay.Frame(nextId++, null, true));
+                }
+                finished = true;
+                upstream = null;
+                lastActive = System.currentTimeMillis();
+                if (emitter != null) {
+                    emitter.complete();
+                    emitter = null;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void bind(Disposable subscription) {
+            lock.lock();
+            try {
+                if (!finished) {
+                    upstream = subscription;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /** 其他实例上的转发连接建立（delta = 1）或断开（delta = -1） */
+        void remote(int delta) {
+            lock.lock();
+            try {
+                remoteWatchers = Math.max(0, remoteWatchers + delta);
+                if (remoteWatchers == 0 && emitter == null) {
+                    lost();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 取消上游并返回 true；没有绑定上游、已结束或上游已完成时返回 false
+         */
+        boolean cancelUpstream() {
+            Disposable subscription;
+            lock.lock();
+            try {
+                if (finished || upstream == null || upstream.isDisposed()) {
+                    return false;
+                }
+                subscription = upstream;
+                upstream = null;
+            } finally {
+                lock.unlock();
+            }
+            subscription.dispose();
+            return true;
+        }
+
+        /** 生成中，且已超过宽限期没有任何连接 */
+        boolean abandoned(long now) {
+            lock.lock();
+            try {
+                return upstream != null && !finished && emitter == null && remoteWatchers == 0
+                        && now - detachedAt >= sseConfig.getDisconnectGrace().toMillis();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /** 在 lock 下调用：失去最后一个连接，宽限期后检查是否仍无人接收 */
+        private void lost() {
+            if (upstream == null || remoteWatchers > 0) {
+                return;
+            }
+            detachedAt = System.currentTimeMillis();
+            scheduleAbandonCheck(this);
+        }
+
+        boolean idleSince(long deadline) {
+            lock.lock();
+            try {
+                return emitter == null && lastActive < deadline;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        boolean connected() {
+            lock.lock();
+            try {
+                return emitter != null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void release() {
+            if (cancelUpstream()) {
+                ragMetrics.cancelled("ask", "evicted");
+            }
+            lock.lock();
+            try {
+                if (emitter != null) {
+                    emitter.complete();
+                    emitter = null;
+                }
+                while (!buffer.isEmpty()) {
+                    drop(buffer.removeFirst());
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /** 在 lock 下调用，提交链保证跨实例的事件顺序；Redis 故障只影响其他实例上的连接 */
+        private void relay(SseRelay.Frame frame) {
+            if (!sseRelay.enabled()) {
+                return;
+            }
+            relayed = relayed.thenCompose(v -> sseRelay.publish(taskId, frame))
+                    .exceptionally(e -> {
+                        log.debug("SSE 跨实例提交失败, taskId: {}, 事件 {}", taskId, frame.id(), e);
+                        return null;
+                    });
+        }
+
+        private void drop(Event event) {
+            bytes -= event.bytes();
+            bufferedBytes.addAndGet(-event.bytes());
+            bufferedEvents.decrementAndGet();
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "sse-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = sseConfig.getSweepInterval().toMillis();
+        sweeper.scheduleWithFixedDelay(this::evictIdle, interval, interval, TimeUnit.MILLISECONDS);
+        sseRelay.onControl(this::onControl);
+    }
+
+    @PreDestroy
+    public void stop() {
+        sweeper.shutdownNow();
+        tasks.values().forEach(Task::release);
+        tasks.clear();
+    }
+
+    /**
+     * 登记任务，之后 send 的事件会缓冲到客户端连接为止
+     */
+    public void create(String taskId) {
+        Task task = new Task(taskId);
+        tasks.put(taskId, task);
+        sseRelay.register(taskId);
+        // 客户端一直没有连上也要能取消
+        scheduleAbandonCheck(task);
+    }
+
+    /**
+     * 绑定上游生成的订阅，之后可被主动取消或在无人接收时自动取消
+     */
+    public void bind(String taskId, Disposable upstream) {
+        Task task = tasks.get(taskId);
+        if (task == null) {
+            upstream.dispose();
+            return;
+        }
+        task.bind(upstream);
     }
 
-    public SseEmitter get(String taskId) {
-        return emitters.get(taskId);
+    /**
+     * 主动取消：任务在本实例时直接取消，否则广播给持有任务的实例；任务不存在或已结束返回 false
+     */
+    public boolean cancel(String taskId) {
+        Task task = tasks.get(taskId);
+        if (task != null) {
+            return cancel(task, "cancel");
+        }
+        if (sseRelay.exists(taskId)) {
+            sseRelay.control(SseRelay.Control.CANCEL, taskId);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 客户端连接（首次 lastEventId 为 null）。任务不在本实例时交给 SseRelay 转发，
+     * 各实例都没有（或已淘汰）时推送一条 error 后结束
+     */
+    public SseEmitter connect(String taskId, Long lastEventId) {
+        Task task = tasks.get(taskId);
+        if (task == null) {
+            SseEmitter relayed = sseRelay.connect(taskId, lastEventId == null ? 0 : lastEventId);
+            if (relayed != null) {
+                return relayed;
+            }
+        }
+        SseEmitter emitter = new SseEmitter(sseConfig.getEmitterTimeout().toMillis());
+        if (task == null) {
+            try {
+                emitter.send(new SseMessage("error", "任务不存在或已过期"));
+            } catch (Exception ignored) {
+                // 客户端已断开
+            }
+            emitter.complete();
+            return emitter;
+        }
+        emitter.onCompletion(() -> task.detach(emitter));
+        emitter.onTimeout(() -> task.detach(emitter));
+        emitter.onError(e -> task.detach(emitter));
+        task.attach(emitter, lastEventId == null ? 0 : lastEventId);
+        return emitter;
     }
 
     public void send(String taskId, Object data) {
-        SseEmitter emitter = emitters.get(taskId);
-        if (emitter == null) return;
+        Task task = tasks.get(taskId);
+        if (task == null) {
+            return;
+        }
+        try {
+            task.append(objectMapper.writeValueAsString(data));
+        } catch (JsonProcessingException e) {
+            log.error("SSE 事件序列化失败, taskId: {}", taskId, e);
+        }
+    }
+
+    /**
+     * 任务结束：关闭当前连接，缓冲保留到空闲淘汰，供断线客户端重连取回
+     */
+    public void complete(String taskId) {
+        Task task = tasks.get(taskId);
+        if (task != null) {
+            task.finish();
+        }
+    }
+
+    public SseStats stats() {
+        int connected = 0;
+        for (Task task : tasks.values()) {
+            if (task.connected()) {
+                connected++;
+            }
+        }
+        return new SseStats(tasks.size(), connected, bufferedEvents.get(), bufferedBytes.get(), evicted.sum(),
+                sseRelay.relaying());
+    }
 
+    /**
+     * 取消上游，推送一条 cancelled 后结束任务；缓冲保留，宽限期后重连的客户端也能看到结果
+     */
+    private boolean cancel(Task task, String reason) {
+        if (!task.cancelUpstream()) {
+            return false;
+        }
+        ragMetrics.cancelled("ask", reason);
+        log.info("生成已取消, taskId: {}, 原因: {}", task.taskId, reason);
+        send(task.taskId, SseMessage.cancelled("cancel".equals(reason) ? "已取消" : "客户端已断开"));
+        task.finish();
+        return true;
+    }
+
+    private void scheduleAbandonCheck(Task task) {
+        long grace = sseConfig.getDisconnectGrace().toMillis();
+        sweeper.schedule(() -> {
+            if (task.abandoned(System.currentTimeMillis())) {
+                cancel(task, "disconnect");
+            }
+        }, grace, TimeUnit.MILLISECONDS);
+    }
+
+    private void onControl(SseRelay.Control control) {
+        Task task = tasks.get(control.taskId());
+        if (task == null) {
+            return;
+        }
+        switch (control.action()) {
+            case SseRelay.Control.ATTACH -> task.remote(1);
+            case SseRelay.Control.DETACH -> task.remote(-1);
+            case SseRelay.Control.CANCEL -> cancel(task, "cancel");
+            default -> log.debug("未知的 SSE 控制消息: {}", control);
+        }
+    }
+
+    private void evictIdle() {
         try {
-            emitter.send(data);
+            long deadline = System.currentTimeMillis() - sseConfig.getIdleTtl().toMillis();
+            tasks.entrySet().removeIf(e -> {
+                if (!e.getValue().idleSince(deadline)) {
+                    return false;
+                }
+                e.getValue().release();
+                evicted.increment();
+                return true;
+            });
         } catch (Exception e) {
-            emitters.remove(taskId);
+            log.warn("SSE 任务淘汰失败", e);
         }
     }
 
-    public void complete(String taskId) {
-        SseEmitter emitter = emitters.remove(taskId);
-        if (emitter != null) {
-            emitter.complete();
+    /** 推送一个事件，失败返回 false（客户端已断开） */
+    private static boolean deliver(SseEmitter emitter, Event event) {
+        try {
+            emitter.send(SseEmitter.event().id(String.valueOf(event.id())).data(event.json(), MediaType.APPLICATION_JSON));
+            return true;
+        } catch (Exception e) {
+            return false;
         }
     }
 }
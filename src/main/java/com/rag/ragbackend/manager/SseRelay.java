@@ -0,0 +1,294 @@
+package com.rag.ragbackend.manager;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rag.ragbackend.config.SseConfig;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBatch;
+import org.redisson.api.RStream;
+import org.redisson.api.RStreamAsync;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.StreamMessageId;
+import org.redisson.api.stream.StreamAddArgs;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * @Description SSE 跨实例转发：/ask 与 /stream 落在不同实例时，由持有连接的实例转发生成实例的事件，无需会话粘滞。
+ * <p>
+ * - rag:sse:task:{taskId}       任务登记（值为生成实例 id），随事件续期，过期即视为任务不存在
+ * - rag:sse:task:{taskId}:events 事件流（Redis Stream），消息 id 即 SSE 事件序号，供后连上或断线重连的客户端补发
+ * - rag:sse:task:{taskId}:live   实时通知（RTopic），每条消息是一帧（已合并的 token）
+ * <p>
+ * 生成实例按事件顺序串行提交（Stream 追加 + 发布同在一个批次），转发实例先订阅再补读 Stream，按序号去重，
+ * 收到的帧序号不连续时回 Stream 补齐。
+ * 转发连接建立/断开、跨实例取消经控制频道 rag:sse:control 通知生成实例，生成实例据此判断任务是否已无人接收。
+ * 未启用时所有方法为空操作，任务只在本实例可见
+ * @Version 1.0.0
+ * @Date 2026-10-19 00:20
+ * @Author by zjh
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SseRelay {
+
+    private static final String KEY_PREFIX = "rag:sse:task:";
+    private static final String FIELD_DATA = "data";
+    private static final String FIELD_END = "end";
+    private static final String CONTROL_TOPIC = "rag:sse:control";
+
+    private final SseConfig sseConfig;
+    private final RedissonClient redissonClient;
+    private final ObjectMapper objectMapper;
+    private final Executor bizExecutor;
+
+    /** 本实例 id，写入任务登记，便于排查任务在哪个实例生成 */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    /** 本实例正在转发的连接数 */
+    private final AtomicInteger relaying = new AtomicInteger();
+
+    /**
+     * 一帧：data 为事件 JSON；end 为 true 表示任务结束，无 data
+     */
+    public record Frame(long id, String data, boolean end) {
+    }
+
+    /**
+     * 控制消息：action 为 attach（其他实例连上）/ detach（其他实例上的连接断开）/ cancel（取消生成）
+     */
+    public record Control(String action, String taskId) {
+        public static final String ATTACH = "attach";
+        public static final String DETACH = "detach";
+        public static final String CANCEL = "cancel";
+    }
+
+    public boolean enabled() {
+        return sseConfig.isRelayEnabled();
+    }
+
+    /**
+     * 登记任务，失败只影响跨实例连接，不影响本实例
+     */
+    public void register(String taskId) {
+        if (!enabled()) {
+            return;
+        }
+        redissonClient.getBucket(KEY_PREFIX + taskId, StringCodec.INSTANCE)
+                .setAsync(nodeId, sseConfig.getIdleTtl().toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((r, e) -> {
+                    if (e != null) {
+                        log.warn("SSE 任务登记失败, taskId: {}, {}", taskId, e.getMessage());
+                    }
+                });
+    }
+
+    /**
+     * 提交一帧，返回值完成后下一帧才能提交（调用方串联），保证 Stream 与发布的顺序与事件序号一致
+     */
+    public CompletableFuture<Void> publish(String taskId, Frame frame) {
+        String key = KEY_PREFIX + taskId;
+        Duration ttl = sseConfig.getIdleTtl();
+        RBatch batch = redissonClient.createBatch();
+        RStreamAsync<String, String> events = batch.getStream(key + ":events", StringCodec.INSTANCE);
+        StreamAddArgs<String, String> entry = frame.end()
+                ? StreamAddArgs.entry(FIELD_END, "1")
+                : StreamAddArgs.entry(FIELD_DATA, frame.data());
+        events.addAsync(new StreamMessageId(frame.id(), 0),
+                entry.trimNonStrict().maxLen(sseConfig.getMaxEvents()).noLimit());
+        events.expireAsync(ttl);
+        batch.getBucket(key, StringCodec.INSTANCE).expireAsync(ttl);
+        try {
+            batch.getTopic(key + ":live", StringCodec.INSTANCE).publishAsync(objectMapper.writeValueAsString(frame));
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return batch.executeAsync().toCompletableFuture().thenApply(r -> null);
+    }
+
+    /**
+     * 任务是否在某个实例上登记（含本实例）
+     */
+    public boolean exists(String taskId) {
+        return enabled() && redissonClient.getBucket(KEY_PREFIX + taskId, StringCodec.INSTANCE).isExists();
+    }
+
+    /**
+     * 本实例没有该任务时尝试从其他实例转发，任务在任何实例都不存在时返回 null
+     */
+    public SseEmitter connect(String taskId, long lastEventId) {
+        if (!exists(taskId)) {
+            return null;
+        }
+        SseEmitter emitter = new SseEmitter(sseConfig.getEmitterTimeout().toMillis());
+        Remote remote = new Remote(taskId, emitter, lastEventId);
+        emitter.onCompletion(remote::close);
+        emitter.onTimeout(remote::close);
+        emitter.onError(e -> remote.close());
+        remote.open();
+        return emitter;
+    }
+
+    /**
+     * 广播控制消息，只有持有该任务的实例处理
+     */
+    public void control(String action, String taskId) {
+        if (!enabled()) {
+            return;
+        }
+        try {
+            redissonClient.getTopic(CONTROL_TOPIC, StringCodec.INSTANCE)
+                    .publishAsync(objectMapper.writeValueAsString(new Control(action, taskId)));
+        } catch (Exception e) {
+            log.warn("SSE 控制消息发送失败, action: {}, taskId: {}", action, taskId, e);
+        }
+    }
+
+    /**
+     * 订阅控制消息，未启用时不订阅
+     */
+    public void onControl(Consumer<Control> listener) {
+        if (!enabled()) {
+            return;
+        }
+        redissonClient.getTopic(CONTROL_TOPIC, StringCodec.INSTANCE).addListener(String.class, (channel, message) -> {
+            try {
+                listener.accept(objectMapper.readValue(message, Control.class));
+            } catch (Exception e) {
+                log.warn("SSE 控制消息处理失败: {}", message, e);
+            }
+        });
+    }
+
+    public int relaying() {
+        return relaying.get();
+    }
+
+    /**
+     * 一个转发连接：订阅实时帧，先补发 Stream 中 lastEventId 之后的事件，再按序号推送实时帧。
+     * 推送在 bizExecutor 上串行执行（wip 计数），不占用 Redisson 的事件循环线程
+     */
+    private final class Remote {
+        private final String taskId;
+        private final String key;
+        private final SseEmitter emitter;
+        private final RTopic topic;
+        private final Queue<Frame> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger wip = new AtomicInteger();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private long delivered;
+        private boolean caughtUp;
+        private int listenerId = -1;
+
+        Remote(String taskId, SseEmitter emitter, long lastEventId) {
+            this.taskId = taskId;
+            this.key = KEY_PREFIX + taskId;
+            this.emitter = emitter;
+            this.delivered = lastEventId;
+            this.topic = redissonClient.getTopic(key + ":live", StringCodec.INSTANCE);
+        }
+
+        void open() {
+            relaying.incrementAndGet();
+            control(Control.ATTACH, taskId);
+            // 先订阅再补读，补读期间到达的帧排队，按序号去重
+            listenerId = topic.addListener(String.class, (channel, message) -> {
+                try {
+                    pending.add(objectMapper.readValue(message, Frame.class));
+                    drain();
+                } catch (Exception e) {
+                    log.warn("SSE 转发帧解析失败, key: {}", key, e);
+                }
+            });
+            drain();
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            bizExecutor.execute(() -> {
+                do {
+                    try {
+                        if (!caughtUp) {
+                            caughtUp = true;
+                            catchUp();
+                        }
+                        Frame frame;
+                        while (!closed.get() && (frame = pending.poll()) != null) {
+                            if (frame.id() <= delivered) {
+                                continue;
+                            }
+                            if (frame.id() > delivered + 1) {
+                                // 漏了中间的帧（订阅建立前发布的），回 Stream 补齐，补读已包含当前帧
+                                catchUp();
+                                continue;
+                            }
+                            handle(frame);
+                        }
+                    } catch (Exception e) {
+                        log.warn("SSE 转发失败, key: {}", key, e);
+                        emitter.completeWithError(e);
+                        close();
+                    }
+                } while (wip.decrementAndGet() != 0);
+            });
+        }
+
+        private void catchUp() {
+            RStream<String, String> events = redissonClient.getStream(key + ":events", StringCodec.INSTANCE);
+            Map<StreamMessageId, Map<String, String>> backlog =
+                    events.range(new StreamMessageId(delivered + 1, 0), StreamMessageId.MAX);
+            for (Map.Entry<StreamMessageId, Map<String, String>> e : backlog.entrySet()) {
+                if (closed.get()) {
+                    return;
+                }
+                Map<String, String> fields = e.getValue();
+                handle(new Frame(e.getKey().getId0(), fields.get(FIELD_DATA), fields.containsKey(FIELD_END)));
+            }
+        }
+
+        private void handle(Frame frame) {
+            delivered = frame.id();
+            if (frame.end()) {
+                emitter.complete();
+                close();
+                return;
+            }
+            try {
+                emitter.send(SseEmitter.event().id(String.valueOf(frame.id())).data(frame.data(), MediaType.APPLICATION_JSON));
+            } catch (Exception e) {
+                // 客户端已断开
+                close();
+            }
+        }
+
+        void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            relaying.decrementAndGet();
+            control(Control.DETACH, taskId);
+            if (listenerId >= 0) {
+                topic.removeListenerAsync(listenerId);
+            }
+            pending.clear();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.rag.ragbackend.manager.hnsw;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @Description 文档日志：追加写入的 新增/删除 记录，保存 id、文本与元数据（JSON）。
+ * 内存里只保留每个节点记录的偏移量，文本与元数据按需用位置读取（多线程安全）。
+ * 记录格式：[int 长度][byte 类型][内容]；进程中途退出留下的半条记录在重放时截掉
+ * @Version 1.0.0
+ * @Date 2026-10-18 18:40
+ * @Author by zjh
+ */
+final class DocumentLog implements Closeable {
+
+    private static final byte ADD = 1;
+    private static final byte DELETE = 2;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<>() {
+    };
+
+    private final FileChannel channel;
+    private long end;
+
+    /** 一条记录：删除记录只有 id，ordinal 为 -1 */
+    record Entry(long offset, int ordinal, String id, String text, Map<String, Object> metadata) {
+
+        boolean isDelete() {
+            return ordinal < 0;
+        }
+    }
+
+    /** 待追加的新增记录 */
+    record Add(int ordinal, String id, String text, Map<String, Object> metadata) {
+    }
+
+    interface Visitor {
+        void visit(Entry entry);
+    }
+
+    DocumentLog(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.end = channel.size();
+    }
+
+    /**
+     * 从头顺序读出所有记录，读到不完整的尾部记录时截断文件
+     */
+    void replay(Visitor visitor) throws IOException {
+        long position = 0;
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+        while (position + Integer.BYTES <= size) {
+            header.clear();
+            readFully(header, position);
+            int length = header.getInt(0);
+            if (length <= 0 || position + Integer.BYTES + length > size) {
+                break;
+            }
+            visitor.visit(decode(position, read(position + Integer.BYTES, length)));
+            position += Integer.BYTES + length;
+        }
+        if (position < size) {
+            channel.truncate(position);
+        }
+        end = position;
+    }
+
+    /**
+     * 一次写入一批新增记录，返回各记录的偏移量
+     */
+    long[] appendAdds(List<Add> adds) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        long[] offsets = new long[adds.size()];
+        for (int i = 0; i < adds.size(); i++) {
+            Add add = adds.get(i);
+            offsets[i] = end + bytes.size();
+            byte[] text = add.text() == null ? new byte[0] : add.text().getBytes(StandardCharsets.UTF_8);
+            byte[] metadata = MAPPER.writeValueAsBytes(add.metadata() == null ? Map.of() : add.metadata());
+            byte[] id = add.id().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(1 + Integer.BYTES + Integer.BYTES + id.length + Integer.BYTES + text.length + Integer.BYTES + metadata.length);
+            out.writeByte(ADD);
+            out.writeInt(add.ordinal());
+            writeBytes(out, id);
+            writeBytes(out, text);
+            writeBytes(out, metadata);
+        }
+        write(bytes.toByteArray());
+        return offsets;
+    }
+
+    void appendDeletes(List<String> ids) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (String id : ids) {
+            byte[] raw = id.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(1 + Integer.BYTES + raw.length);
+            out.writeByte(DELETE);
+            writeBytes(out, raw);
+        }
+        write(bytes.toByteArray());
+    }
+
+    /** 按偏移量读取一条新增记录 */
+    Entry read(long offset) {
+        try {
+            ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+            readFully(header, offset);
+            return decode(offset, read(offset + Integer.BYTES, header.getInt(0)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    private void write(byte[] data) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        long position = end;
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        end = position;
+    }
+
+    private byte[] read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        readFully(buffer, position);
+        return buffer.array();
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n < 0) {
+                throw new IOException("文档日志已损坏, offset=" + position);
+            }
+        }
+    }
+
+    private static Entry decode(long offset, byte[] body) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        byte type = in.readByte();
+        if (type == DELETE) {
+            return new Entry(offset, -1, new String(readBytes(in), StandardCharsets.UTF_8), null, null);
+        }
+        int ordinal = in.readInt();
+        String id = new String(readBytes(in), StandardCharsets.UTF_8);
+        String text = new String(readBytes(in), StandardCharsets.UTF_8);
+        Map<String, Object> metadata = MAPPER.readValue(readBytes(in), METADATA_TYPE);
+        return new Entry(offset, ordinal, id, text, metadata);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] data) throws IOException {
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] data = new byte[in.readInt()];
+        in.readFully(data);
+        return data;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.force(false);
+        channel.close();
+    }
+}
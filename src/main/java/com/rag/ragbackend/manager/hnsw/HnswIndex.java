@@ -0,0 +1,545 @@
+package com.rag.ragbackend.manager.hnsw;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntPredicate;
+
+/**
+ * @Description HNSW 图索引（余弦相似度，向量写入前归一化，相似度即点积）。
+ * <p>
+ * 存储布局：
+ * <ul>
+ *     <li>vectors-*.bin：每个节点 dim 个 float，内存映射，堆外</li>
+ *     <li>graph-*.bin：每个节点 [level, flags, count, m0 个邻居 id]，第 0 层邻接表，内存映射</li>
+ *     <li>上层邻接表：只有约 1/m 的节点有上层，放在堆上，按节点写时复制；checkpoint 时写 hnsw.upper</li>
+ *     <li>hnsw.meta：维度、m、已 checkpoint 的节点数与入口节点</li>
+ * </ul>
+ * 并发：只允许一个写线程（由调用方加锁），读线程无锁。第 0 层邻居先写 id 再以 release 语义写 count，
+ * 读线程以 acquire 语义读 count；裁剪邻居时原地覆盖，读线程可能看到新旧混合的邻居，但每个 id 都是有效节点，不影响正确性
+ * @Version 1.0.0
+ * @Date 2026-10-18 18:20
+ * @Author by zjh
+ */
+final class HnswIndex implements Closeable {
+
+    static final int NODES_PER_SEGMENT = 1 << 16;
+
+    private static final int MAGIC = 0x484E5357;
+    private static final int FORMAT_VERSION = 1;
+    private static final int MAX_LEVEL = 16;
+
+    /** 第 0 层记录头：level、flags、count */
+    private static final int LEVEL = 0;
+    private static final int FLAGS = 4;
+    private static final int COUNT = 8;
+    private static final int IDS = 12;
+    private static final int FLAG_DELETED = 1;
+
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final Path dir;
+    private final int dim;
+    private final int m;
+    private final int m0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final Random random = new Random();
+
+    private final MappedSegments vectors;
+    private final MappedSegments graph;
+
+    /** 节点 → 第 1..level 层邻居（下标为 level-1），整体替换实现写时复制 */
+    private final Map<Integer, int[][]> upper = new ConcurrentHashMap<>();
+
+    /** 每线程复用的检索上下文（访问标记 + 向量读缓冲），每次检索只取一次 */
+    private final ThreadLocal<Context> contexts;
+
+    private volatile EntryPoint entry;
+
+    /** 已完成插入的节点数（节点按 0,1,2... 顺序插入） */
+    private volatile int size;
+
+    /** 已 checkpoint 的节点数，重启后从这里开始重放 */
+    private final int checkpointedSize;
+
+    private record EntryPoint(int node, int level) {
+    }
+
+    HnswIndex(Path dir, int dim, int m, int efConstruction) throws IOException {
+        Files.createDirectories(dir);
+        this.dir = dir;
+        this.dim = dim;
+        this.m = m;
+        this.m0 = m * 2;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(m);
+        this.contexts = ThreadLocal.withInitial(() -> new Context(dim, m0));
+        this.vectors = new MappedSegments(dir, "vectors", dim * Float.BYTES, NODES_PER_SEGMENT);
+        this.graph = new MappedSegments(dir, "graph", IDS + m0 * Integer.BYTES, NODES_PER_SEGMENT);
+        this.checkpointedSize = loadMeta();
+        this.size = checkpointedSize;
+        loadUpper();
+    }
+
+    int dimensions() {
+        return dim;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int checkpointedSize() {
+        return checkpointedSize;
+    }
+
+    int randomLevel() {
+        double level = -Math.log(1 - random.nextDouble()) * levelMultiplier;
+        return (int) Math.min(MAX_LEVEL, level);
+    }
+
+    /**
+     * 写入节点向量与层数（尚未连入图），vector 必须已归一化
+     */
+    void set(int node, float[] vector, int level) throws IOException {
+        if (vector.length != dim) {
+            throw new IllegalArgumentException("向量维度不匹配, 期望 " + dim + ", 实际 " + vector.length);
+        }
+        vectors.ensureCapacity(node);
+        graph.ensureCapacity(node);
+        MappedByteBuffer vb = vectors.buffer(node);
+        int vo = vectors.offset(node);
+        for (int i = 0; i < dim; i++) {
+            vb.putFloat(vo + i * Float.BYTES, vector[i]);
+        }
+        MappedByteBuffer gb = graph.buffer(node);
+        int go = graph.offset(node);
+        gb.putInt(go + LEVEL, level);
+        gb.putInt(go + FLAGS, 0);
+        INT.setRelease(gb, go + COUNT, 0);
+    }
+
+    /**
+     * 把已 set 的节点连入图，只能由写线程按节点顺序调用（重启恢复时重复插入同一节点是安全的）
+     */
+    void insert(int node) {
+        int level = levelOf(node);
+        if (level > 0) {
+            upper.put(node, new int[level][0]);
+        } else {
+            upper.remove(node);
+        }
+        INT.setRelease(graph.buffer(node), graph.offset(node) + COUNT, 0);
+
+        EntryPoint ep = entry;
+        if (ep == null) {
+            entry = new EntryPoint(node, level);
+            size = Math.max(size, node + 1);
+            return;
+        }
+        Context ctx = contexts.get();
+        float[] query = vector(node);
+        int current = ep.node();
+        for (int l = ep.level(); l > level; l--) {
+            current = greedy(ctx, query, current, l);
+        }
+        for (int l = Math.min(level, ep.level()); l >= 0; l--) {
+            ScoredHeap.Scored candidates = searchLayer(ctx, query, current, efConstruction, l, null);
+            int[] neighbors = selectNeighbors(ctx, candidates.nodes(), candidates.scores(), node, l == 0 ? m0 : m);
+            setNeighbors(node, l, neighbors);
+            for (int neighbor : neighbors) {
+                link(ctx, neighbor, node, l);
+            }
+            if (candidates.size() > 0) {
+                current = candidates.nodes()[0];
+            }
+        }
+        if (level > ep.level()) {
+            entry = new EntryPoint(node, level);
+        }
+        size = Math.max(size, node + 1);
+    }
+
+    void markDeleted(int node) {
+        MappedByteBuffer gb = graph.buffer(node);
+        int go = graph.offset(node);
+        gb.putInt(go + FLAGS, gb.getInt(go + FLAGS) | FLAG_DELETED);
+    }
+
+    boolean isDeleted(int node) {
+        return (graph.buffer(node).getInt(graph.offset(node) + FLAGS) & FLAG_DELETED) != 0;
+    }
+
+    /**
+     * 检索与 query（已归一化）最相似的 k 个可见节点：跳过已删除节点，accept 为额外的过滤条件（可为 null）。
+     * 已删除或被过滤的节点仍参与图遍历，只是不进入结果
+     */
+    ScoredHeap.Scored search(float[] query, int k, int ef, IntPredicate accept) {
+        EntryPoint ep = entry;
+        if (ep == null || k <= 0) {
+            return new ScoredHeap.Scored(new int[0], new float[0]);
+        }
+        Context ctx = contexts.get();
+        int current = ep.node();
+        for (int l = ep.level(); l > 0; l--) {
+            current = greedy(ctx, query, current, l);
+        }
+        IntPredicate visible = accept == null ? node -> !isDeleted(node) : node -> !isDeleted(node) && accept.test(node);
+        ScoredHeap.Scored found = searchLayer(ctx, query, current, Math.max(ef, k), 0, visible);
+        if (found.size() <= k) {
+            return found;
+        }
+        return new ScoredHeap.Scored(Arrays.copyOf(found.nodes(), k), Arrays.copyOf(found.scores(), k));
+    }
+
+    float[] vector(int node) {
+        float[] v = new float[dim];
+        readVector(node, v);
+        return v;
+    }
+
+    /** 查询向量与节点的点积：映射内存批量读入线程内复用的数组后计算，循环可被 JIT 向量化 */
+    private float similarity(Context ctx, float[] query, int node) {
+        readVector(node, ctx.a);
+        return dot(query, ctx.a);
+    }
+
+    private void readVector(int node, float[] dst) {
+        vectors.floats(node).get(vectors.offset(node) / Float.BYTES, dst, 0, dim);
+    }
+
+    /** 4 路独立累加，打断浮点加法的依赖链（JIT 不会自动向量化浮点归约） */
+    private static float dot(float[] a, float[] b) {
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int n = a.length;
+        int i = 0;
+        for (; i + 3 < n; i += 4) {
+            s0 += a[i] * b[i];
+            s1 += a[i + 1] * b[i + 1];
+            s2 += a[i + 2] * b[i + 2];
+            s3 += a[i + 3] * b[i + 3];
+        }
+        for (; i < n; i++) {
+            s0 += a[i] * b[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    private int levelOf(int node) {
+        return graph.buffer(node).getInt(graph.offset(node) + LEVEL);
+    }
+
+    /** 上层贪心下降：ef=1 */
+    private int greedy(Context ctx, float[] query, int start, int level) {
+        int current = start;
+        float best = similarity(ctx, query, current);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int neighbor : upperNeighbors(current, level)) {
+                float score = similarity(ctx, query, neighbor);
+                if (score > best) {
+                    best = score;
+                    current = neighbor;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 单层 beam search。accept 为 null 时所有节点都可进入结果（构图用），否则只有通过的节点进入结果，
+     * 遍历范围不受影响
+     */
+    private ScoredHeap.Scored searchLayer(Context ctx, float[] query, int start, int ef, int level,
+                                          IntPredicate accept) {
+        ctx.reset(graph.capacity());
+        ScoredHeap candidates = new ScoredHeap(ef * 2, true);
+        ScoredHeap results = new ScoredHeap(ef + 1, false);
+
+        float startScore = similarity(ctx, query, start);
+        ctx.visit(start);
+        candidates.push(start, startScore);
+        if (accept == null || accept.test(start)) {
+            results.push(start, startScore);
+        }
+        while (!candidates.isEmpty()) {
+            float candidateScore = candidates.topScore();
+            if (results.size() >= ef && candidateScore < results.topScore()) {
+                break;
+            }
+            int candidate = candidates.pop();
+            if (level == 0) {
+                MappedByteBuffer gb = graph.buffer(candidate);
+                int go = graph.offset(candidate);
+                int count = (int) INT.getAcquire(gb, go + COUNT);
+                for (int i = 0; i < count; i++) {
+                    int neighbor = gb.getInt(go + IDS + i * Integer.BYTES);
+                    expand(ctx, query, neighbor, ef, accept, candidates, results);
+                }
+            } else {
+                for (int neighbor : upperNeighbors(candidate, level)) {
+                    expand(ctx, query, neighbor, ef, accept, candidates, results);
+                }
+            }
+        }
+        return results.drainDescending();
+    }
+
+    private void expand(Context ctx, float[] query, int neighbor, int ef, IntPredicate accept,
+                        ScoredHeap candidates, ScoredHeap results) {
+        if (!ctx.visit(neighbor)) {
+            return;
+        }
+        float score = similarity(ctx, query, neighbor);
+        if (results.size() < ef || score > results.topScore()) {
+            candidates.push(neighbor, score);
+            if (accept == null || accept.test(neighbor)) {
+                results.push(neighbor, score);
+                if (results.size() > ef) {
+                    results.pop();
+                }
+            }
+        }
+    }
+
+    /**
+     * 启发式选邻居：候选按相似度降序，若候选与已选某节点的相似度高于与目标的相似度则跳过（保证方向多样），
+     * 不足 max 个时用被跳过的候选补齐
+     */
+    private int[] selectNeighbors(Context ctx, int[] nodes, float[] scores, int self, int max) {
+        int[] selected = new int[Math.min(max, nodes.length)];
+        int count = 0;
+        int[] pruned = new int[nodes.length];
+        int prunedCount = 0;
+        for (int i = 0; i < nodes.length && count < max; i++) {
+            int candidate = nodes[i];
+            if (candidate == self) {
+                continue;
+            }
+            // 候选向量只读一次，已选节点的向量缓存在 ctx.kept 里
+            readVector(candidate, ctx.a);
+            boolean diverse = true;
+            for (int j = 0; j < count; j++) {
+                if (dot(ctx.a, ctx.kept[j]) > scores[i]) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                System.arraycopy(ctx.a, 0, ctx.kept[count], 0, dim);
+                selected[count++] = candidate;
+            } else {
+                pruned[prunedCount++] = candidate;
+            }
+        }
+        for (int i = 0; i < prunedCount && count < selected.length; i++) {
+            selected[count++] = pruned[i];
+        }
+        return count == selected.length ? selected : Arrays.copyOf(selected, count);
+    }
+
+    /** 反向连边：邻居已满时对 原邻居 + 新节点 重新选邻居 */
+    private void link(Context ctx, int node, int added, int level) {
+        int[] current = neighbors(node, level);
+        for (int existing : current) {
+            if (existing == added) {
+                return;
+            }
+        }
+        int max = level == 0 ? m0 : m;
+        if (current.length < max) {
+            int[] grown = Arrays.copyOf(current, current.length + 1);
+            grown[current.length] = added;
+            setNeighbors(node, level, grown);
+            return;
+        }
+        float[] base = vector(node);
+        ScoredHeap heap = new ScoredHeap(current.length + 1, true);
+        for (int existing : current) {
+            heap.push(existing, similarity(ctx, base, existing));
+        }
+        heap.push(added, similarity(ctx, base, added));
+        ScoredHeap.Scored sorted = heap.drainDescending();
+        setNeighbors(node, level, selectNeighbors(ctx, sorted.nodes(), sorted.scores(), node, max));
+    }
+
+    private int[] neighbors(int node, int level) {
+        if (level > 0) {
+            return upperNeighbors(node, level);
+        }
+        MappedByteBuffer gb = graph.buffer(node);
+        int go = graph.offset(node);
+        int count = (int) INT.getAcquire(gb, go + COUNT);
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = gb.getInt(go + IDS + i * Integer.BYTES);
+        }
+        return ids;
+    }
+
+    private int[] upperNeighbors(int node, int level) {
+        int[][] levels = upper.get(node);
+        return levels == null || levels.length < level ? new int[0] : levels[level - 1];
+    }
+
+    private void setNeighbors(int node, int level, int[] ids) {
+        if (level > 0) {
+            int[][] levels = upper.get(node);
+            int[][] copy = levels.clone();
+            copy[level - 1] = ids;
+            upper.put(node, copy);
+            return;
+        }
+        MappedByteBuffer gb = graph.buffer(node);
+        int go = graph.offset(node);
+        // 先写 id 再发布 count：count 变小时先缩 count，变大时后放大 count
+        if (ids.length < (int) INT.getAcquire(gb, go + COUNT)) {
+            INT.setRelease(gb, go + COUNT, ids.length);
+        }
+        for (int i = 0; i < ids.length; i++) {
+            gb.putInt(go + IDS + i * Integer.BYTES, ids[i]);
+        }
+        INT.setRelease(gb, go + COUNT, ids.length);
+    }
+
+    /**
+     * 持久化：映射内存刷盘后写上层邻接表与元数据（先写临时文件再原子替换），元数据记录的节点数之前的数据都已落盘
+     */
+    void checkpoint() throws IOException {
+        vectors.force();
+        graph.force();
+        int persisted = size;
+        EntryPoint ep = entry;
+
+        Path upperTmp = dir.resolve("hnsw.upper.tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(upperTmp)))) {
+            out.writeInt(upper.size());
+            for (Map.Entry<Integer, int[][]> e : upper.entrySet()) {
+                out.writeInt(e.getKey());
+                out.writeInt(e.getValue().length);
+                for (int[] ids : e.getValue()) {
+                    out.writeInt(ids.length);
+                    for (int id : ids) {
+                        out.writeInt(id);
+                    }
+                }
+            }
+        }
+        Files.move(upperTmp, dir.resolve("hnsw.upper"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        Path metaTmp = dir.resolve("hnsw.meta.tmp");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(metaTmp))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(dim);
+            out.writeInt(m);
+            out.writeInt(persisted);
+            out.writeInt(ep == null ? -1 : ep.node());
+            out.writeInt(ep == null ? -1 : ep.level());
+        }
+        Files.move(metaTmp, dir.resolve("hnsw.meta"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private int loadMeta() throws IOException {
+        Path meta = dir.resolve("hnsw.meta");
+        if (!Files.exists(meta)) {
+            return 0;
+        }
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(meta))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException("不是有效的 HNSW 索引文件: " + meta);
+            }
+            int storedDim = in.readInt();
+            int storedM = in.readInt();
+            if (storedDim != dim || storedM != m) {
+                throw new IllegalStateException("HNSW 索引参数与配置不一致: dim=" + storedDim + ", m=" + storedM
+                        + "，如需修改请清空 " + dir);
+            }
+            int persisted = in.readInt();
+            int entryNode = in.readInt();
+            int entryLevel = in.readInt();
+            if (entryNode >= 0) {
+                entry = new EntryPoint(entryNode, entryLevel);
+            }
+            return persisted;
+        }
+    }
+
+    private void loadUpper() throws IOException {
+        Path file = dir.resolve("hnsw.upper");
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            int nodes = in.readInt();
+            for (int n = 0; n < nodes; n++) {
+                int node = in.readInt();
+                int[][] levels = new int[in.readInt()][];
+                for (int l = 0; l < levels.length; l++) {
+                    levels[l] = new int[in.readInt()];
+                    for (int i = 0; i < levels[l].length; i++) {
+                        levels[l][i] = in.readInt();
+                    }
+                }
+                upper.put(node, levels);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        vectors.close();
+        graph.close();
+    }
+
+    /** 每线程复用的访问标记（用代数代替清零）、向量读缓冲与选邻居时已选节点的向量 */
+    private static final class Context {
+
+        final float[] a;
+        final float[][] kept;
+        private int[] marks = new int[0];
+        private int generation;
+
+        Context(int dim, int maxNeighbors) {
+            a = new float[dim];
+            kept = new float[maxNeighbors][dim];
+        }
+
+        void reset(int capacity) {
+            if (marks.length < capacity) {
+                marks = new int[capacity];
+                generation = 0;
+            }
+            if (++generation == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                generation = 1;
+            }
+        }
+
+        /** 首次访问返回 true；本次检索开始后才扩容出的节点直接跳过 */
+        boolean visit(int node) {
+            if (node >= marks.length || marks[node] == generation) {
+                return false;
+            }
+            marks[node] = generation;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package com.rag.ragbackend.manager.hnsw;
+
+import com.rag.ragbackend.pojo.dto.RetrievalOptions;
+import com.rag.ragbackend.pojo.dto.RetrievedChunk;
+import com.rag.ragbackend.utils.VectorUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+
+/**
+ * @Description 进程内向量库：HNSW 图 + 内存映射向量 + 追加写文档日志，实现 Spring AI 的 VectorStore。
+ * <p>
+ * 写入（add/delete）串行执行，检索无锁，可与写入并发；同 id 再次写入时旧节点打墓碑，检索时跳过。
+ * 每写入 checkpointInterval 个节点以及关闭时做一次 checkpoint，重启时只重放 checkpoint 之后的节点，不重建整张图。
+ * 带过滤条件的检索在图上遍历时跳过不满足条件的节点，条件越严格遍历越多；过滤用的字段（doc_id、tenant、tag_*）
+ * 按节点常驻内存（写入与重放时建立，相同取值的字段组合共享一个实例），遍历中不读文档日志，只有最终的 topK 才读取。
+ * 过滤条件引用了其他字段时退回逐节点读取文档元数据
+ * @Version 1.0.0
+ * @Date 2026-10-18 18:50
+ * @Author by zjh
+ */
+@Slf4j
+public class HnswVectorStore implements VectorStore, Closeable {
+
+    private final EmbeddingModel embeddingModel;
+    private final HnswIndex index;
+    private final DocumentLog documents;
+    private final int efSearch;
+    private final int checkpointInterval;
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    /** 文档 id → 节点序号（只含未删除的） */
+    private final Map<String, Integer> ordinals = new ConcurrentHashMap<>();
+
+    /** 节点序号 → 文档日志偏移量，写线程扩容时整体替换 */
+    private volatile long[] offsets = new long[1024];
+
+    /** 节点序号 → 可过滤字段，与 offsets 一起扩容 */
+    @SuppressWarnings("unchecked")
+    private volatile Map<String, Object>[] fields = new Map[1024];
+
+    /** 相同的可过滤字段组合只保留一个实例（同一文档的 chunk 通常完全相同） */
+    private final Map<Map<String, Object>, Map<String, Object>> fieldSets = new ConcurrentHashMap<>();
+
+    private int nextOrdinal;
+    private int sinceCheckpoint;
+
+    public HnswVectorStore(EmbeddingModel embeddingModel, Path dir, int dimensions, int m, int efConstruction,
+                           int efSearch, int checkpointInterval) throws IOException {
+        this.embeddingModel = embeddingModel;
+        this.index = new HnswIndex(dir, dimensions, m, efConstruction);
+        this.documents = new DocumentLog(dir.resolve("docs.log"));
+        this.efSearch = efSearch;
+        this.checkpointInterval = Math.max(1, checkpointInterval);
+        recover();
+    }
+
+    /**
+     * 重放文档日志：恢复 id 映射与偏移量，checkpoint 之后写入的节点（向量已在映射文件中）重新连入图
+     */
+    private void recover() throws IOException {
+        long begin = System.nanoTime();
+        List<Integer> pending = new ArrayList<>();
+        documents.replay(entry -> {
+            if (entry.isDelete()) {
+                Integer ordinal = ordinals.remove(entry.id());
+                if (ordinal != null) {
+                    index.markDeleted(ordinal);
+                }
+                return;
+            }
+            int ordinal = entry.ordinal();
+            Integer previous = ordinals.put(entry.id(), ordinal);
+            if (previous != null && previous != ordinal) {
+                index.markDeleted(previous);
+            }
+            ensureOffsets(ordinal);
+            offsets[ordinal] = entry.offset();
+            fields[ordinal] = filterable(entry.metadata());
+            nextOrdinal = Math.max(nextOrdinal, ordinal + 1);
+            if (ordinal >= index.checkpointedSize()) {
+                pending.add(ordinal);
+            }
+        });
+        for (int ordinal : pending) {
+            index.insert(ordinal);
+        }
+        if (!pending.isEmpty()) {
+            checkpoint();
+        }
+        log.info("HNSW 向量库已加载, 文档 {} 个, 节点 {} 个, 重放 {} 个, 耗时 {}ms", ordinals.size(), nextOrdinal,
+                pending.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        if (documents.isEmpty()) {
+            return;
+        }
+        List<String> texts = documents.stream().map(Document::getText).toList();
+        add(documents, embeddingModel.embed(texts));
+    }
+
+    /**
+     * 写入已算好向量的文档，documents 与 embeddings 按下标一一对应
+     */
+    public void add(List<Document> docs, List<float[]> embeddings) {
+        if (docs.isEmpty()) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            int first = nextOrdinal;
+            List<DocumentLog.Add> adds = new ArrayList<>(docs.size());
+            long[] written;
+            try {
+                // 先写向量再写日志：日志里有的节点，向量一定已在映射文件中
+                for (int i = 0; i < docs.size(); i++) {
+                    Document doc = docs.get(i);
+                    int ordinal = nextOrdinal++;
+                    index.set(ordinal, VectorUtil.normalize(embeddings.get(i)), index.randomLevel());
+                    adds.add(new DocumentLog.Add(ordinal, doc.getId(), doc.getText(), doc.getMetadata()));
+                }
+                written = documents.appendAdds(adds);
+            } catch (IOException e) {
+                nextOrdinal = first;
+                throw new UncheckedIOException("HNSW 写入失败", e);
+            }
+            for (int i = 0; i < adds.size(); i++) {
+                DocumentLog.Add add = adds.get(i);
+                ensureOffsets(add.ordinal());
+                offsets[add.ordinal()] = written[i];
+                fields[add.ordinal()] = filterable(add.metadata());
+                index.insert(add.ordinal());
+                Integer previous = ordinals.put(add.id(), add.ordinal());
+                if (previous != null) {
+                    index.markDeleted(previous);
+                }
+            }
+            sinceCheckpoint += adds.size();
+            if (sinceCheckpoint >= checkpointInterval) {
+                checkpoint();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("HNSW checkpoint 失败", e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        writeLock.lock();
+        try {
+            List<String> existing = idList.stream().filter(ordinals::containsKey).toList();
+            if (existing.isEmpty()) {
+                return;
+            }
+            documents.appendDeletes(existing);
+            for (String id : existing) {
+                Integer ordinal = ordinals.remove(id);
+                if (ordinal != null) {
+                    index.markDeleted(ordinal);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("HNSW 删除失败", e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        List<String> matched = new ArrayList<>();
+        IntPredicate accept = predicate(filterExpression);
+        for (Map.Entry<String, Integer> e : ordinals.entrySet()) {
+            if (accept.test(e.getValue())) {
+                matched.add(e.getKey());
+            }
+        }
+        delete(matched);
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        float[] query = embeddingModel.embed(request.getQuery());
+        List<Document> results = new ArrayList<>();
+        for (RetrievedChunk chunk : search(query, request.getTopK(), request.getFilterExpression())) {
+            if (chunk.score() >= request.getSimilarityThreshold()) {
+                results.add(toDocument(chunk));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 用查询向量检索 topK，filter 可为 null；结果按余弦相似度降序，embedding 为归一化后的向量
+     */
+    public List<RetrievedChunk> search(float[] queryEmbedding, int topK, Filter.Expression filter) {
+        float[] query = VectorUtil.normalize(queryEmbedding);
+        IntPredicate accept = filter == null ? null : predicate(filter);
+        ScoredHeap.Scored found = index.search(query, topK, Math.max(efSearch, topK), accept);
+        List<RetrievedChunk> chunks = new ArrayList<>(found.size());
+        for (int i = 0; i < found.size(); i++) {
+            chunks.add(read(found.nodes()[i], found.scores()[i]));
+        }
+        return chunks;
+    }
+
+    /**
+     * 按 id 读取文档，不存在的忽略；score 为 0
+     */
+    public List<RetrievedChunk> get(Collection<String> ids) {
+        List<RetrievedChunk> chunks = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Integer ordinal = ordinals.get(id);
+            if (ordinal != null) {
+                chunks.add(read(ordinal, 0));
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * 分批遍历未删除的文档，遍历期间的写入可能看到也可能看不到
+     */
+    public void forEach(int batchSize, Consumer<List<RetrievedChunk>> consumer) {
+        List<RetrievedChunk> batch = new ArrayList<>(batchSize);
+        for (int ordinal : ordinals.values()) {
+            batch.add(read(ordinal, 0));
+            if (batch.size() >= batchSize) {
+                consumer.accept(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            consumer.accept(batch);
+        }
+    }
+
+    private RetrievedChunk read(int ordinal, double score) {
+        DocumentLog.Entry entry = documents.read(offsets[ordinal]);
+        return new RetrievedChunk(entry.id(), entry.text(), entry.metadata(), score, index.vector(ordinal));
+    }
+
+    /** 未删除的文档数 */
+    public int size() {
+        return ordinals.size();
+    }
+
+    /** 与 ChromaVectorStore 的转换保持一致：metadata 带上 distance，score = 相似度 */
+    public static Document toDocument(RetrievedChunk chunk) {
+        Map<String, Object> metadata = new HashMap<>(chunk.metadata());
+        metadata.put("distance", 1.0 - chunk.score());
+        return Document.builder()
+                .id(chunk.id())
+                .text(chunk.text())
+                .metadata(metadata)
+                .score(chunk.score())
+                .build();
+    }
+
+    private void ensureOffsets(int ordinal) {
+        if (ordinal >= offsets.length) {
+            int capacity = Math.max(offsets.length * 2, ordinal + 1);
+            // 先扩 fields 再扩 offsets：读线程按 offsets 的长度判断节点存在时，fields 一定已够长
+            fields = Arrays.copyOf(fields, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+        }
+    }
+
+    /**
+     * 过滤条件只引用可过滤字段时在内存中求值，否则读文档日志
+     */
+    private IntPredicate predicate(Filter.Expression filter) {
+        if (MetadataFilter.keys(filter).stream().allMatch(HnswVectorStore::isFilterable)) {
+            return ordinal -> {
+                Map<String, Object> values = fields[ordinal];
+                return values != null && MetadataFilter.matches(filter, values);
+            };
+        }
+        return ordinal -> MetadataFilter.matches(filter, documents.read(offsets[ordinal]).metadata());
+    }
+
+    private Map<String, Object> filterable(Map<String, Object> metadata) {
+        Map<String, Object> kept = new HashMap<>();
+        if (metadata != null) {
+            for (Map.Entry<String, Object> e : metadata.entrySet()) {
+                if (isFilterable(e.getKey()) && e.getValue() != null) {
+                    kept.put(e.getKey(), e.getValue());
+                }
+            }
+        }
+        Map<String, Object> copy = Map.copyOf(kept);
+        return fieldSets.computeIfAbsent(copy, k -> copy);
+    }
+
+    private static boolean isFilterable(String key) {
+        return RetrievalOptions.DOC_ID.equals(key) || RetrievalOptions.TENANT.equals(key)
+                || key.startsWith(RetrievalOptions.TAG_PREFIX);
+    }
+
+    private void checkpoint() throws IOException {
+        documents.force();
+        index.checkpoint();
+        sinceCheckpoint = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        writeLock.lock();
+        try {
+            checkpoint();
+            index.close();
+            documents.close();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.rag.ragbackend.manager.hnsw;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @Description 定长记录的内存映射存储：按段（每段固定记录数）一个文件，数据在堆外，由操作系统页缓存管理。
+ * 只有写线程扩容；扩容时整体替换段数组，读线程拿到的旧数组仍然可用
+ * @Version 1.0.0
+ * @Date 2026-10-18 18:10
+ * @Author by zjh
+ */
+final class MappedSegments implements Closeable {
+
+    private final Path dir;
+    private final String prefix;
+    private final int recordBytes;
+    private final int recordsPerSegment;
+    private final List<FileChannel> channels = new ArrayList<>();
+
+    private volatile Segment[] segments = new Segment[0];
+
+    /** 同一段映射的字节视图与 float 视图（小端） */
+    private record Segment(MappedByteBuffer bytes, FloatBuffer floats) {
+    }
+
+    MappedSegments(Path dir, String prefix, int recordBytes, int recordsPerSegment) throws IOException {
+        if ((long) recordBytes * recordsPerSegment > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("segment too large: " + recordBytes + " x " + recordsPerSegment);
+        }
+        this.dir = dir;
+        this.prefix = prefix;
+        this.recordBytes = recordBytes;
+        this.recordsPerSegment = recordsPerSegment;
+        // 打开已有的段文件
+        int existing = 0;
+        while (Files.exists(segmentPath(existing))) {
+            existing++;
+        }
+        if (existing > 0) {
+            ensureCapacity(existing * recordsPerSegment - 1);
+        }
+    }
+
+    /**
+     * 保证 record 所在的段已映射，只能由写线程调用
+     */
+    void ensureCapacity(int record) throws IOException {
+        int segment = record / recordsPerSegment;
+        Segment[] current = segments;
+        if (segment < current.length) {
+            return;
+        }
+        Segment[] grown = Arrays.copyOf(current, segment + 1);
+        for (int i = current.length; i <= segment; i++) {
+            FileChannel channel = FileChannel.open(segmentPath(i),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channels.add(channel);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) recordBytes * recordsPerSegment);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            grown[i] = new Segment(buffer, buffer.asFloatBuffer());
+        }
+        segments = grown;
+    }
+
+    /** record 所在段，配合 offset 做绝对位置读写（绝对读写不改变 position，可多线程共享） */
+    MappedByteBuffer buffer(int record) {
+        return segments[record / recordsPerSegment].bytes();
+    }
+
+    int offset(int record) {
+        return (record % recordsPerSegment) * recordBytes;
+    }
+
+    /** record 所在段的 float 视图，配合 offset / Float.BYTES 做批量读取 */
+    FloatBuffer floats(int record) {
+        return segments[record / recordsPerSegment].floats();
+    }
+
+    /** 已映射的记录数上限 */
+    int capacity() {
+        return segments.length * recordsPerSegment;
+    }
+
+    /** 脏页刷盘 */
+    void force() {
+        for (Segment segment : segments) {
+            segment.bytes().force();
+        }
+    }
+
+    private Path segmentPath(int segment) {
+        return dir.resolve(String.format("%s-%05d.bin", prefix, segment));
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        for (FileChannel channel : channels) {
+            channel.close();
+        }
+    }
+}
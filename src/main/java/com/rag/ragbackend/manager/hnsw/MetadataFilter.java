@@ -0,0 +1,124 @@
+package com.rag.ragbackend.manager.hnsw;
+
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+/**
+ * @Description 在内存中对文档元数据求值 Spring AI 的过滤表达式（EQ/NE/GT/GTE/LT/LTE/IN/NIN/AND/OR/NOT）
+ * @Version 1.0.0
+ * @Date 2026-10-18 18:45
+ * @Author by zjh
+ */
+final class MetadataFilter {
+
+    private MetadataFilter() {
+    }
+
+    static boolean matches(Filter.Expression expression, Map<String, Object> metadata) {
+        if (expression == null) {
+            return true;
+        }
+        return switch (expression.type()) {
+            case AND -> matches(operand(expression.left()), metadata) && matches(operand(expression.right()), metadata);
+            case OR -> matches(operand(expression.left()), metadata) || matches(operand(expression.right()), metadata);
+            case NOT -> !matches(operand(expression.left()), metadata);
+            case EQ -> equalsValue(actual(expression, metadata), expected(expression));
+            case NE -> !equalsValue(actual(expression, metadata), expected(expression));
+            case GT -> compare(expression, metadata, c -> c > 0);
+            case GTE -> compare(expression, metadata, c -> c >= 0);
+            case LT -> compare(expression, metadata, c -> c < 0);
+            case LTE -> compare(expression, metadata, c -> c <= 0);
+            case IN -> in(actual(expression, metadata), expected(expression));
+            case NIN -> !in(actual(expression, metadata), expected(expression));
+            default -> throw new IllegalArgumentException("不支持的过滤条件: " + expression.type());
+        };
+    }
+
+    /** 表达式引用的所有字段名 */
+    static Set<String> keys(Filter.Expression expression) {
+        Set<String> keys = new HashSet<>();
+        collectKeys(expression, keys);
+        return keys;
+    }
+
+    private static void collectKeys(Filter.Expression expression, Set<String> keys) {
+        switch (expression.type()) {
+            case AND, OR -> {
+                collectKeys(operand(expression.left()), keys);
+                collectKeys(operand(expression.right()), keys);
+            }
+            case NOT -> collectKeys(operand(expression.left()), keys);
+            default -> {
+                if (expression.left() instanceof Filter.Key key) {
+                    keys.add(key.key());
+                }
+            }
+        }
+    }
+
+    private static Filter.Expression operand(Filter.Operand operand) {
+        if (operand instanceof Filter.Group group) {
+            return group.content();
+        }
+        if (operand instanceof Filter.Expression expression) {
+            return expression;
+        }
+        throw new IllegalArgumentException("无效的过滤表达式: " + operand);
+    }
+
+    private static Object actual(Filter.Expression expression, Map<String, Object> metadata) {
+        if (!(expression.left() instanceof Filter.Key key)) {
+            throw new IllegalArgumentException("过滤条件左侧必须是字段名: " + expression);
+        }
+        return metadata.get(key.key());
+    }
+
+    private static Object expected(Filter.Expression expression) {
+        if (!(expression.right() instanceof Filter.Value value)) {
+            throw new IllegalArgumentException("过滤条件右侧必须是值: " + expression);
+        }
+        return value.value();
+    }
+
+    private static boolean equalsValue(Object actual, Object expected) {
+        if (actual instanceof Number a && expected instanceof Number b) {
+            return a.doubleValue() == b.doubleValue();
+        }
+        return Objects.equals(actual, expected);
+    }
+
+    /** 缺失字段不满足任何大小比较 */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static boolean compare(Filter.Expression expression, Map<String, Object> metadata, IntPredicate test) {
+        Object actual = actual(expression, metadata);
+        Object expected = expected(expression);
+        if (actual == null) {
+            return false;
+        }
+        if (actual instanceof Number a && expected instanceof Number b) {
+            return test.test(Double.compare(a.doubleValue(), b.doubleValue()));
+        }
+        if (actual instanceof Comparable a && actual.getClass().isInstance(expected)) {
+            return test.test(a.compareTo(expected));
+        }
+        throw new IllegalArgumentException("无法比较: " + actual + " 与 " + expected);
+    }
+
+    private static boolean in(Object actual, Object expected) {
+        if (!(expected instanceof Collection<?> values)) {
+            return equalsValue(actual, expected);
+        }
+        for (Object value : values) {
+            if (equalsValue(actual, value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,116 @@
+package com.rag.ragbackend.manager.hnsw;
+
+import java.util.Arrays;
+
+/**
+ * @Description (节点, 相似度) 二叉堆，用平行数组避免装箱；max=true 时堆顶为相似度最高的节点，否则为最低的
+ * @Version 1.0.0
+ * @Date 2026-10-18 18:10
+ * @Author by zjh
+ */
+final class ScoredHeap {
+
+    private final boolean max;
+    private int[] nodes;
+    private float[] scores;
+    private int size;
+
+    ScoredHeap(int capacity, boolean max) {
+        this.max = max;
+        this.nodes = new int[Math.max(4, capacity)];
+        this.scores = new float[nodes.length];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int topNode() {
+        return nodes[0];
+    }
+
+    float topScore() {
+        return scores[0];
+    }
+
+    void push(int node, float score) {
+        if (size == nodes.length) {
+            nodes = Arrays.copyOf(nodes, size * 2);
+            scores = Arrays.copyOf(scores, size * 2);
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(score, scores[parent])) {
+                break;
+            }
+            nodes[i] = nodes[parent];
+            scores[i] = scores[parent];
+            i = parent;
+        }
+        nodes[i] = node;
+        scores[i] = score;
+    }
+
+    /** 弹出堆顶并返回其节点 */
+    int pop() {
+        int top = nodes[0];
+        int lastNode = nodes[--size];
+        float lastScore = scores[size];
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < size && before(scores[right], scores[child])) {
+                child = right;
+            }
+            if (!before(scores[child], lastScore)) {
+                break;
+            }
+            nodes[i] = nodes[child];
+            scores[i] = scores[child];
+            i = child;
+        }
+        nodes[i] = lastNode;
+        scores[i] = lastScore;
+        return top;
+    }
+
+    private boolean before(float a, float b) {
+        return max ? a > b : a < b;
+    }
+
+    /**
+     * 按相似度从高到低导出，导出后堆被清空
+     */
+    Scored drainDescending() {
+        int n = size;
+        int[] outNodes = new int[n];
+        float[] outScores = new float[n];
+        if (max) {
+            for (int i = 0; i < n; i++) {
+                outScores[i] = topScore();
+                outNodes[i] = pop();
+            }
+        } else {
+            for (int i = n - 1; i >= 0; i--) {
+                outScores[i] = topScore();
+                outNodes[i] = pop();
+            }
+        }
+        return new Scored(outNodes, outScores);
+    }
+
+    /** 按相似度降序排列的结果 */
+    record Scored(int[] nodes, float[] scores) {
+
+        int size() {
+            return nodes.length;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.rag.ragbackend.pojo.dto;
+
+/**
+ * @Description 压缩后的上下文及压缩前后的 token 数
+ * @Version 1.0.0
+ * @Date 2026-10-18 21:00
+ * @Author by zjh
+ */
+public record CompressedContext(String context, int inputTokens, int outputTokens) {
+
+    /** 输出 / 输入 token 比例，越小压缩越多 */
+    public double ratio() {
+        return inputTokens == 0 ? 1.0 : (double) outputTokens / inputTokens;
+    }
+}
@@ -0,0 +1,21 @@
+package com.rag.ragbackend.pojo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @Description 会话中的一轮问答，以 JSON 存于 Redis 列表
+ * @Version 1.0.0
+ * @Date 2026-10-18 21:30
+ * @Author by zjh
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ConversationTurn {
+
+    private String question;
+
+    private String answer;
+}
@@ -0,0 +1,21 @@
+package com.rag.ragbackend.pojo.dto;
+
+/**
+ * @Description 向量缓存命中统计
+ * @Version 1.0.0
+ * @Date 2026-10-18 16:20
+ * @Author by zjh
+ */
+public record EmbeddingCacheStats(long localHits,
+                                  long localMisses,
+                                  long localEvictions,
+                                  long localSize,
+                                  long redisHits,
+                                  long redisMisses) {
+
+    /** 两级合计命中率：任一级命中即算命中 */
+    public double hitRatio() {
+        long requests = localHits + localMisses;
+        return requests == 0 ? 0 : (double) (localHits + redisHits) / requests;
+    }
+}
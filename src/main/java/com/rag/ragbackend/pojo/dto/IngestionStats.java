@@ -0,0 +1,106 @@
+package com.rag.ragbackend.pojo.dto;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Description 入库流水线各阶段计数与耗时，线程安全，可在入库过程中被其他线程读取
+ * @Version 1.0.0
+ * @Date 2026-10-18 10:20
+ * @Author by zjh
+ */
+public class IngestionStats {
+
+    private final long startNanos = System.nanoTime();
+
+    /** 切分阶段：产出 chunk 数与耗时 */
+    private final AtomicLong chunked = new AtomicLong();
+    private final AtomicLong chunkNanos = new AtomicLong();
+
+    /** 内容未变化、跳过向量化与写入的 chunk 数 */
+    private final AtomicLong skipped = new AtomicLong();
+
+    /** 向量化阶段：完成 chunk 数、请求批次数与累计耗时（各批次耗时之和） */
+    private final AtomicLong embedded = new AtomicLong();
+    private final AtomicLong embedBatches = new AtomicLong();
+    private final AtomicLong embedNanos = new AtomicLong();
+
+    /** 写入阶段：写入 chunk 数、写入次数与耗时 */
+    private final AtomicLong stored = new AtomicLong();
+    private final AtomicLong storeBatches = new AtomicLong();
+    private final AtomicLong storeNanos = new AtomicLong();
+
+    public void recordChunked(int count, long nanos) {
+        chunked.addAndGet(count);
+        chunkNanos.addAndGet(nanos);
+    }
+
+    public void recordSkipped(int count) {
+        skipped.addAndGet(count);
+    }
+
+    public void recordEmbedded(int count, long nanos) {
+        embedded.addAndGet(count);
+        embedBatches.incrementAndGet();
+        embedNanos.addAndGet(nanos);
+    }
+
+    public void recordStored(int count, long nanos) {
+        stored.addAndGet(count);
+        storeBatches.incrementAndGet();
+        storeNanos.addAndGet(nanos);
+    }
+
+    public long getChunked() {
+        return chunked.get();
+    }
+
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    public long getEmbedded() {
+        return embedded.get();
+    }
+
+    public long getStored() {
+        return stored.get();
+    }
+
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    /** 切分吞吐（chunk/s） */
+    public double chunkRate() {
+        return rate(chunked.get(), chunkNanos.get());
+    }
+
+    /** 单个 embed 线程的吞吐（chunk/s），乘以并发数即为理论总吞吐 */
+    public double embedRate() {
+        return rate(embedded.get(), embedNanos.get());
+    }
+
+    /** 写入吞吐（chunk/s） */
+    public double storeRate() {
+        return rate(stored.get(), storeNanos.get());
+    }
+
+    /** 端到端吞吐（chunk/s） */
+    public double overallRate() {
+        return rate(stored.get(), System.nanoTime() - startNanos);
+    }
+
+    private static double rate(long count, long nanos) {
+        return nanos <= 0 ? 0 : count * 1_000_000_000d / nanos;
+    }
+
+    /** 日志用的单行汇总 */
+    public String summary() {
+        return String.format("切分 %d 个 (%.1f/s), 跳过 %d 个 | 向量化 %d 个, %d 批 (%.1f/s/线程) | 写入 %d 个, %d 次 (%.1f/s) | 总耗时 %dms (%.1f/s)",
+                chunked.get(), chunkRate(), skipped.get(),
+                embedded.get(), embedBatches.get(), embedRate(),
+                stored.get(), storeBatches.get(), storeRate(),
+                getElapsedMillis(), overallRate());
+    }
+}
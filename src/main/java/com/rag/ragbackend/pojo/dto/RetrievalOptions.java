@@ -0,0 +1,104 @@
+package com.rag.ragbackend.pojo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @Description 检索参数：召回数量、最低相似度、元数据过滤（文档/租户/标签）与上下文 token 上限。
+ * 字段为 null 表示使用 rag.retrieval 下的默认值
+ * @Version 1.0.0
+ * @Date 2026-10-18 17:30
+ * @Author by zjh
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class RetrievalOptions {
+
+    /** chunk metadata 中的字段名 */
+    public static final String DOC_ID = "doc_id";
+    public static final String TENANT = "tenant";
+    public static final String TAG_PREFIX = "tag_";
+
+    /**
+     * 最多召回的 chunk 数
+     */
+    private Integer topK;
+
+    /**
+     * 最低余弦相似度，低于该值的 chunk 不进入 prompt
+     */
+    private Double minScore;
+
+    /**
+     * 只在这些文档中检索（上传时的文件名）
+     */
+    private List<String> docIds;
+
+    /**
+     * 只在该租户的文档中检索
+     */
+    private String tenant;
+
+    /**
+     * 命中任一标签的文档
+     */
+    private List<String> tags;
+
+    /**
+     * 拼进 prompt 的知识库内容 token 上限
+     */
+    private Integer maxContextTokens;
+
+    /**
+     * 相对截断：相似度低于 最高分 × 该比例 的 chunk 丢弃
+     */
+    private Double relativeCutoff;
+
+    /** 复制一份并修改召回数量（过量召回用） */
+    public RetrievalOptions withTopK(int topK) {
+        return new RetrievalOptions(topK, minScore, docIds, tenant, tags, maxContextTokens, relativeCutoff);
+    }
+
+    public static RetrievalOptions defaults() {
+        return new RetrievalOptions();
+    }
+
+    /** 标签在 chunk metadata 中存为 tag_<name>=true，Chroma 的 where 不支持数组包含 */
+    public static String tagKey(String tag) {
+        return TAG_PREFIX + tag;
+    }
+
+    public boolean hasFilter() {
+        return tenant != null || (docIds != null && !docIds.isEmpty()) || (tags != null && !tags.isEmpty());
+    }
+
+    /**
+     * 在内存中判断 chunk 元数据是否满足过滤条件（与向量库的过滤语义一致）
+     */
+    public boolean matches(Map<String, Object> metadata) {
+        if (docIds != null && !docIds.isEmpty() && !docIds.contains(String.valueOf(metadata.get(DOC_ID)))) {
+            return false;
+        }
+        if (tenant != null && !tenant.equals(metadata.get(TENANT))) {
+            return false;
+        }
+        return tags == null || tags.isEmpty() || tags.stream().anyMatch(tag -> Boolean.TRUE.equals(metadata.get(tagKey(tag))));
+    }
+
+    /**
+     * 过滤条件的字符串形式，过滤条件不同的检索结果（及据此生成的答案）不能互相复用
+     */
+    public String filterKey() {
+        if (!hasFilter()) {
+            return "";
+        }
+        return "tenant=" + (tenant == null ? "" : tenant)
+                + "|docs=" + (docIds == null ? "" : String.join(",", docIds))
+                + "|tags=" + (tags == null ? "" : String.join(",", tags));
+    }
+}
@@ -0,0 +1,12 @@
+package com.rag.ragbackend.pojo.dto;
+
+import java.util.Map;
+
+/**
+ * @Description 一条检索结果：score 为与查询向量的余弦相似度，embedding 可能为 null（向量库未返回时）
+ * @Version 1.0.0
+ * @Date 2026-10-18 17:30
+ * @Author by zjh
+ */
+public record RetrievedChunk(String id, String text, Map<String, Object> metadata, double score, float[] embedding) {
+}
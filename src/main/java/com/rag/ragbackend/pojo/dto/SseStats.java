@@ -0,0 +1,15 @@
+package com.rag.ragbackend.pojo.dto;
+
+/**
+ * @Description SSE 任务注册表统计
+ * @Version 1.0.0
+ * @Date 2026-10-18 22:00
+ * @Author by zjh
+ */
+public record SseStats(int liveTasks,
+                       int connectedEmitters,
+                       long bufferedEvents,
+                       long bufferedBytes,
+                       long evictedTasks,
+                       int relayedEmitters) {
+}
@@ -0,0 +1,19 @@
+package com.rag.ragbackend.pojo.resp;
+
+/**
+ * @Description 入库任务进度，状态查询与 SSE 推送共用
+ * @Version 1.0.0
+ * @Date 2026-10-18 14:40
+ * @Author by zjh
+ */
+public record IngestionProgress(String jobId,
+                                String filename,
+                                String status,
+                                long extracted,
+                                long skipped,
+                                long embedded,
+                                long stored,
+                                double ratePerSecond,
+                                long elapsedMillis,
+                                String error) {
+}
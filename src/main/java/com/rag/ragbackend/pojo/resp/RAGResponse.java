@@ -20,4 +20,9 @@ public class RAGResponse {
     private String answer;
 
     private List<String> chunks;
+
+    /**
+     * 上下文压缩后与压缩前的 token 比例，命中答案缓存时为空
+     */
+    private Double compressionRatio;
 }
@@ -1,12 +1,20 @@
 package com.rag.ragbackend.pojo.resp;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.rag.ragbackend.manager.AdmissionGate;
+
 /**
  * @Description
  * @Version 1.0.0
  * @Date 2025-12-27 16:47
  * @Author by zjh
  */
-public record SseMessage(String type, String content) {
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record SseMessage(String type, String content, Long retryAfter) {
+
+    public SseMessage(String type, String content) {
+        this(type, content, null);
+    }
 
     public static SseMessage delta(String token) {
         return new SseMessage("delta", token);
@@ -15,4 +23,18 @@ public record SseMessage(String type, String content) {
     public static SseMessage done() {
         return new SseMessage("done", null);
     }
+
+    public static SseMessage cancelled(String reason) {
+        return new SseMessage("cancelled", reason);
+    }
+
+    /**
+     * 生成失败；因名额不足被拒绝时带上 retryAfter（建议的重试秒数），响应已开始，无法再返回 429
+     */
+    public static SseMessage error(Throwable error) {
+        if (error instanceof AdmissionGate.RejectedException rejected) {
+            return new SseMessage("error", rejected.getMessage(), rejected.getRetryAfterSeconds());
+        }
+        return new SseMessage("error", error.getMessage());
+    }
 }
@@ -1,8 +1,11 @@
 package com.rag.ragbackend.service;
 
 
+import com.rag.ragbackend.pojo.dto.CompressedContext;
 import reactor.core.publisher.Flux;
 
+import java.util.List;
+
 /**
  * ChatService - 最小可用的内存 RAG 流程实现
  *
@@ -25,8 +28,8 @@ public interface ChatService {
 
     String callChatRag(String query);
     /**
-     * 压缩调用
+     * 压缩调用：按问题压缩检索到的 chunk（按检索排名排序），返回拼进 prompt 的上下文及压缩前后的 token 数
      */
-    void CompressionChat();
+    CompressedContext CompressionChat(String question, List<String> chunks);
 
 }
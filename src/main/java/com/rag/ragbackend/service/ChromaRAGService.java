@@ -1,7 +1,7 @@
 package com.rag.ragbackend.service;
 
+import com.rag.ragbackend.pojo.dto.RetrievalOptions;
 import com.rag.ragbackend.pojo.resp.RAGResponse;
-import com.rag.ragbackend.service.impl.ChromaRAGServiceImpl;
 import reactor.core.publisher.Flux;
 
 /**
@@ -11,9 +11,17 @@ import reactor.core.publisher.Flux;
  * @Author by zjh
  */
 public interface ChromaRAGService {
-    RAGResponse chatWithRAG(String question);
+    /**
+     * sessionId 为空时为单轮问答，否则带上该会话的历史并在回答后记录本轮
+     */
+    RAGResponse chatWithRAG(String question, String sessionId, RetrievalOptions options);
 
-    Flux<String> streamChatWithRAG(String question);
+    Flux<String> streamChatWithRAG(String question, String sessionId, RetrievalOptions options);
 
-    void asyncGenerate(String taskId,String question);
+    /**
+     * 与 streamChatWithRAG 相同，指标按 flux 入口统计；返回的流订阅时才执行，不阻塞订阅线程
+     */
+    Flux<String> reactiveStream(String question, String sessionId, RetrievalOptions options);
+
+    void asyncGenerate(String taskId, String question, String sessionId, RetrievalOptions options);
 }
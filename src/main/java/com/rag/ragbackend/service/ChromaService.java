@@ -1,9 +1,14 @@
 package com.rag.ragbackend.service;
 
+import com.rag.ragbackend.pojo.dto.RetrievalOptions;
+import com.rag.ragbackend.pojo.dto.RetrievedChunk;
 import org.springframework.ai.document.Document;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * @Description
@@ -13,8 +18,46 @@ import java.util.Map;
  */
 public interface ChromaService {
 
-    void addEmbedding(String id, String text, List<Double> embedding);
+    void addEmbedding(String id, String text, float[] embedding);
+
+    /**
+     * 批量写入，documents 与 embeddings 按下标一一对应
+     */
+    void addEmbeddings(List<Document> documents, List<float[]> embeddings);
+
+    /**
+     * 按 id 删除
+     */
+    void delete(List<String> ids);
 
 
     List<Document> queryVectorStore(String queryText, int topK);
+
+    /**
+     * 用已算好的查询向量检索
+     */
+    List<Document> queryVectorStore(float[] queryEmbedding, int topK);
+
+    /**
+     * 按检索参数召回：options 需已用 RetrievalConfig.resolve 补全，按 topK 与元数据过滤条件查询，
+     * 结果按相似度从高到低排列（相似度阈值与截断由调用方处理）
+     */
+    List<RetrievedChunk> search(float[] queryEmbedding, RetrievalOptions options);
+
+    /**
+     * 非阻塞检索，语义同 search；默认在 boundedElastic 上执行同步实现
+     */
+    default Mono<List<RetrievedChunk>> searchAsync(float[] queryEmbedding, RetrievalOptions options) {
+        return Mono.fromCallable(() -> search(queryEmbedding, options)).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * 按 id 批量读取（含文本、元数据与向量），不存在的 id 忽略；score 为 0
+     */
+    List<RetrievedChunk> getByIds(List<String> ids);
+
+    /**
+     * 分批遍历向量库中的全部 chunk（重建其他索引用）
+     */
+    void forEachChunk(int batchSize, Consumer<List<RetrievedChunk>> consumer);
 }
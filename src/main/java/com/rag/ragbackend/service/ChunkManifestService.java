@@ -0,0 +1,22 @@
+package com.rag.ragbackend.service;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * @Description 文档 chunk 清单：记录每个文档当前已写入向量库的 chunk id，用于增量入库
+ * @Version 1.0.0
+ * @Date 2026-10-18 15:30
+ * @Author by zjh
+ */
+public interface ChunkManifestService {
+
+    /**
+     * 文档当前的 chunk id 集合，不存在时返回空集合
+     */
+    Set<String> load(String docId);
+
+    void addAll(String docId, Collection<String> chunkIds);
+
+    void removeAll(String docId, Collection<String> chunkIds);
+}
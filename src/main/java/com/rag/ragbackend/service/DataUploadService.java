@@ -1,5 +1,9 @@
 package com.rag.ragbackend.service;
 
+import com.rag.ragbackend.utils.TextSegments;
+
+import java.util.Map;
+
 /**
  * @Description
  * @Version 1.0.0
@@ -8,4 +12,11 @@ package com.rag.ragbackend.service;
  */
 public interface DataUploadService {
     int indexDocument(String text);
+
+    /**
+     * 分段读取的文档增量入库，边读边切分边写入，调用方负责关闭 segments。
+     * docId 为文档标识（同一文档重复上传时保持一致），metadata 附加到每个 chunk（租户、标签），
+     * 入库过程中回调 listener 汇报进度并检查是否取消（取消时抛出 CancellationException）
+     */
+    int indexDocument(String docId, Map<String, Object> metadata, TextSegments segments, IngestionListener listener);
 }
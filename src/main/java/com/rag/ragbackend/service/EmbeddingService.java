@@ -4,11 +4,24 @@ package com.rag.ragbackend.service;
 import java.util.List;
 
 /**
- * 兼容多种返回类型的 EmbeddingService。
- * - 将 embeddingModel.embed(text) 的返回值解析为 List<Double>
- * - 打印实际返回类型，便于调试
+ * 文本向量化服务，统一返回 float[]，避免装箱。
+ * - embed：单条文本
+ * - embedBatch：多条文本一次请求
  */
 public interface EmbeddingService {
 
-    List<Double> embedText(String text);
+    /**
+     * 单条文本向量化
+     */
+    float[] embed(String text);
+
+    /**
+     * 批量向量化，一次请求携带多条文本，返回顺序与入参一致
+     */
+    float[][] embedBatch(List<String> texts);
+
+    /**
+     * 向量维度，未解析到时返回 -1
+     */
+    int dimensions();
 }
@@ -0,0 +1,24 @@
+package com.rag.ragbackend.service;
+
+import com.rag.ragbackend.pojo.dto.IngestionStats;
+
+/**
+ * @Description 入库过程回调：进度通知与取消检查，由入库流水线在每个批次边界调用
+ * @Version 1.0.0
+ * @Date 2026-10-18 14:30
+ * @Author by zjh
+ */
+public interface IngestionListener {
+
+    IngestionListener NONE = new IngestionListener() {
+    };
+
+    /** 有批次完成向量化或写入时回调 */
+    default void onProgress(IngestionStats stats) {
+    }
+
+    /** 返回 true 时流水线在下一个批次边界停止 */
+    default boolean isCancelled() {
+        return false;
+    }
+}
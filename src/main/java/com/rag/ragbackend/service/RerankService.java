@@ -0,0 +1,20 @@
+package com.rag.ragbackend.service;
+
+import com.rag.ragbackend.pojo.dto.RetrievalOptions;
+import com.rag.ragbackend.pojo.dto.RetrievedChunk;
+
+import java.util.List;
+
+/**
+ * @Description 检索结果重排：多样性重排、去重，并在上下文 token 预算内挑选 chunk
+ * @Version 1.0.0
+ * @Date 2026-10-18 20:30
+ * @Author by zjh
+ */
+public interface RerankService {
+
+    /**
+     * candidates 按检索排名排序（第一个为综合排名最高的），返回最多 topK 个、总 token 不超过 maxContextTokens 的 chunk
+     */
+    List<RetrievedChunk> rerank(float[] questionVector, List<RetrievedChunk> candidates, RetrievalOptions options);
+}
@@ -0,0 +1,31 @@
+package com.rag.ragbackend.service;
+
+import com.rag.ragbackend.pojo.dto.RetrievalOptions;
+import com.rag.ragbackend.pojo.dto.RetrievedChunk;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * @Description 检索：BM25 + 向量混合召回 + 相似度阈值 + 自适应截断 + 上下文 token 预算
+ * @Version 1.0.0
+ * @Date 2026-10-18 17:40
+ * @Author by zjh
+ */
+public interface RetrievalService {
+
+    /**
+     * 补全检索参数（未指定的取 rag.retrieval 默认值）
+     */
+    RetrievalOptions resolve(RetrievalOptions options);
+
+    /**
+     * 用问题文本（BM25）与已算好的问题向量检索，返回按融合排名排序、可直接拼进 prompt 的 chunk
+     */
+    List<RetrievedChunk> retrieve(String question, float[] questionVector, RetrievalOptions options);
+
+    /**
+     * 非阻塞检索，结果同 retrieve；向量检索等待期间不占线程，融合与重排在 boundedElastic 上执行
+     */
+    Mono<List<RetrievedChunk>> retrieveAsync(String question, float[] questionVector, RetrievalOptions options);
+}
@@ -0,0 +1,213 @@
+package com.rag.ragbackend.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.rag.ragbackend.config.EmbeddingCacheConfig;
+import com.rag.ragbackend.manager.DownstreamLimiter;
+import com.rag.ragbackend.pojo.dto.EmbeddingCacheStats;
+import com.rag.ragbackend.service.EmbeddingService;
+import com.rag.ragbackend.utils.MD5Util;
+import com.rag.ragbackend.utils.VectorUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Description 带两级缓存的 EmbeddingService（@Primary，其余组件注入 EmbeddingService 时拿到的是它）
+ * - 一级：进程内 Caffeine（W-TinyLFU），按向量字节数限容，值为 float[]
+ * - 二级：Redis，值为小端 float 二进制，多个实例共享
+ * - key：模型名 + 文本 MD5，换模型后自然失效
+ * @Version 1.0.0
+ * @Date 2026-10-18 16:25
+ * @Author by zjh
+ */
+@Slf4j
+@Primary
+@Service
+public class CachedEmbeddingServiceImpl implements EmbeddingService {
+
+    private static final String REDIS_PREFIX = "rag:emb:";
+
+    private final EmbeddingServiceImpl delegate;
+    private final DownstreamLimiter downstreamLimiter;
+    private final RedisTemplate<String, byte[]> binaryRedisTemplate;
+    private final EmbeddingCacheConfig cacheConfig;
+    private final String model;
+    private final Cache<String, float[]> localCache;
+
+    private final LongAdder redisHits = new LongAdder();
+    private final LongAdder redisMisses = new LongAdder();
+
+    public CachedEmbeddingServiceImpl(EmbeddingServiceImpl delegate,
+                                      DownstreamLimiter downstreamLimiter,
+                                      RedisTemplate<String, byte[]> binaryRedisTemplate,
+                                      EmbeddingCacheConfig cacheConfig,
+                                      @Value("${spring.ai.ollama.embedding.options.model}") String model) {
+        this.delegate = delegate;
+        this.downstreamLimiter = downstreamLimiter;
+        this.binaryRedisTemplate = binaryRedisTemplate;
+        this.cacheConfig = cacheConfig;
+        this.model = model;
+        this.localCache = Caffeine.newBuilder()
+                .maximumWeight(cacheConfig.getLocalMaxSize().toBytes())
+                .weigher((String key, float[] value) -> key.length() * 2 + value.length * Float.BYTES + 64)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public float[] embed(String text) {
+        if (!cacheConfig.isEnabled() || text == null || text.isEmpty()) {
+            return delegate.embed(text);
+        }
+        String key = key(text);
+        float[] vector = localCache.getIfPresent(key);
+        if (vector != null) {
+            return vector;
+        }
+        List<byte[]> remote = redisGet(List.of(key));
+        if (remote.get(0) != null) {
+            vector = VectorUtil.fromBytes(remote.get(0));
+        } else {
+            vector = delegate.embed(text);
+            redisPut(List.of(key), List.of(vector));
+        }
+        localCache.put(key, vector);
+        return vector;
+    }
+
+    /**
+     * 批量：先查一级，一级未命中的一次 MGET 查二级，仍未命中的合并成一次 embed 请求
+     */
+    @Override
+    public float[][] embedBatch(List<String> texts) {
+        if (!cacheConfig.isEnabled() || texts == null || texts.isEmpty()) {
+            return delegate.embedBatch(texts);
+        }
+        float[][] out = new float[texts.size()][];
+        List<String> keys = new ArrayList<>(texts.size());
+        List<Integer> localMissIdx = new ArrayList<>();
+        List<String> localMissKeys = new ArrayList<>();
+        for (int i = 0; i < texts.size(); i++) {
+            String key = key(texts.get(i));
+            keys.add(key);
+            out[i] = localCache.getIfPresent(key);
+            if (out[i] == null) {
+                localMissIdx.add(i);
+                localMissKeys.add(key);
+            }
+        }
+        if (localMissIdx.isEmpty()) {
+            return out;
+        }
+
+        List<byte[]> remote = redisGet(localMissKeys);
+        List<Integer> missIdx = new ArrayList<>();
+        List<String> missTexts = new ArrayList<>();
+        for (int j = 0; j < localMissIdx.size(); j++) {
+            int i = localMissIdx.get(j);
+            if (remote.get(j) != null) {
+                out[i] = VectorUtil.fromBytes(remote.get(j));
+                localCache.put(keys.get(i), out[i]);
+            } else {
+                missIdx.add(i);
+                missTexts.add(texts.get(i));
+            }
+        }
+        if (missIdx.isEmpty()) {
+            return out;
+        }
+
+        float[][] computed = delegate.embedBatch(missTexts);
+        List<String> putKeys = new ArrayList<>(missIdx.size());
+        List<float[]> putValues = new ArrayList<>(missIdx.size());
+        for (int j = 0; j < missIdx.size(); j++) {
+            int i = missIdx.get(j);
+            out[i] = computed[j];
+            localCache.put(keys.get(i), computed[j]);
+            putKeys.add(keys.get(i));
+            putValues.add(computed[j]);
+        }
+        redisPut(putKeys, putValues);
+        return out;
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    public EmbeddingCacheStats stats() {
+        CacheStats local = localCache.stats();
+        return new EmbeddingCacheStats(local.hitCount(), local.missCount(), local.evictionCount(),
+                localCache.estimatedSize(), redisHits.sum(), redisMisses.sum());
+    }
+
+    private String key(String text) {
+        return model + ":" + MD5Util.md5Hex(text);
+    }
+
+    /** 批量读取二级缓存，Redis 不可用时视为全部未命中 */
+    private List<byte[]> redisGet(List<String> keys) {
+        List<byte[]> values = null;
+        if (cacheConfig.isRedisEnabled()) {
+            try {
+                List<String> redisKeys = new ArrayList<>(keys.size());
+                for (String key : keys) {
+                    redisKeys.add(REDIS_PREFIX + key);
+                }
+                values = downstreamLimiter.call(DownstreamLimiter.Downstream.REDIS,
+                        () -> binaryRedisTemplate.opsForValue().multiGet(redisKeys));
+            } catch (Exception e) {
+                log.warn("向量缓存读取 Redis 失败：{}", e.getMessage());
+            }
+        }
+        if (values == null) {
+            values = new ArrayList<>(keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                values.add(null);
+            }
+        }
+        if (cacheConfig.isRedisEnabled()) {
+            for (byte[] value : values) {
+                if (value != null) {
+                    redisHits.increment();
+                } else {
+                    redisMisses.increment();
+                }
+            }
+        }
+        return values;
+    }
+
+    /** pipeline 批量写入二级缓存，失败只记录日志 */
+    private void redisPut(List<String> keys, List<float[]> vectors) {
+        if (!cacheConfig.isRedisEnabled()) {
+            return;
+        }
+        Expiration expiration = Expiration.from(cacheConfig.getRedisTtl());
+        try {
+            downstreamLimiter.call(DownstreamLimiter.Downstream.REDIS,
+                    () -> binaryRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                        for (int i = 0; i < keys.size(); i++) {
+                            connection.stringCommands().set((REDIS_PREFIX + keys.get(i)).getBytes(StandardCharsets.UTF_8),
+                                    VectorUtil.toBytes(vectors.get(i)), expiration, RedisStringCommands.SetOption.upsert());
+                        }
+                        return null;
+                    }));
+        } catch (Exception e) {
+            log.warn("向量缓存写入 Redis 失败：{}", e.getMessage());
+        }
+    }
+}
@@ -1,6 +1,11 @@
 package com.rag.ragbackend.service.impl;
 
+import com.rag.ragbackend.config.CompressionConfig;
+import com.rag.ragbackend.manager.DownstreamLimiter;
+import com.rag.ragbackend.pojo.dto.CompressedContext;
 import com.rag.ragbackend.service.ChatService;
+import com.rag.ragbackend.utils.ExtractiveCompressor;
+import com.rag.ragbackend.utils.TokenEstimator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.model.StreamingChatModel;
@@ -29,25 +34,78 @@ public class ChatServiceImpl implements ChatService {
 
     private final StreamingChatModel streamingChatModel;
 
+    private final CompressionConfig compressionConfig;
+
+    private final DownstreamLimiter downstreamLimiter;
+
     @Override
     public Flux<String> streamChatRag(String query) {
-        try {
-            Flux<String> stream = chatModel.stream(query);
-            return stream;
-        } catch (Exception ex) {
-            ex.printStackTrace();
-            return null;
-        }
+        // 订阅时才调用模型，失败以错误信号传给下游
+        return downstreamLimiter.stream(DownstreamLimiter.Downstream.OLLAMA_CHAT, () -> chatModel.stream(query))
+                .doOnError(e -> log.error("流式生成失败", e));
     }
 
     @Override
     public String callChatRag(String query) {
-        return chatModel.call(query);
+        return downstreamLimiter.call(DownstreamLimiter.Downstream.OLLAMA_CHAT, () -> chatModel.call(query));
     }
 
     @Override
-    public void CompressionChat() {
+    public CompressedContext CompressionChat(String question, List<String> chunks) {
+        String raw = String.join("\n", chunks);
+        int inputTokens = TokenEstimator.estimate(raw);
+        if (!compressionConfig.isEnabled() || inputTokens <= compressionConfig.getMinInputTokens()) {
+            return new CompressedContext(raw, inputTokens, inputTokens);
+        }
 
+        long begin = System.nanoTime();
+        int budget = compressionConfig.getMaxTokens();
+        String context = ExtractiveCompressor.compress(question, chunks, budget);
+        if (compressionConfig.getMode() == CompressionConfig.Mode.LLM) {
+            context = summarize(question, context, budget);
+        }
+        int outputTokens = TokenEstimator.estimate(context);
+        CompressedContext compressed = new CompressedContext(context, inputTokens, outputTokens);
+        log.debug("上下文压缩, 模式 {}, token {} -> {}, 比例 {}, 耗时 {}ms", compressionConfig.getMode(),
+                inputTokens, outputTokens, String.format("%.2f", compressed.ratio()),
+                (System.nanoTime() - begin) / 1_000_000);
+        return compressed;
+    }
+
+    /**
+     * 由大模型概括抽取结果，只作用在已抽取的句子上，概括本身的 prefill 不超过 budget。
+     * 失败或收益不足时返回抽取结果
+     */
+    private String summarize(String question, String extracted, int budget) {
+        int extractedTokens = TokenEstimator.estimate(extracted);
+        String prompt = """
+                请根据问题，把下面的资料压缩成简短的要点，只保留回答问题需要的事实、数字和名称，不要回答问题，不要添加资料以外的内容：
+                
+                【资料】
+                %s
+                
+                【问题】
+                %s
+                """.formatted(extracted, question);
+        try {
+            String summary = callChatRag(prompt);
+            if (summary == null) {
+                return extracted;
+            }
+            // 推理模型会先输出 <think> 段，不计入压缩结果
+            summary = summary.replaceAll("(?s)<think>.*?</think>", "").strip();
+            if (summary.isEmpty()) {
+                return extracted;
+            }
+            summary = summary.substring(0, TokenEstimator.indexOfBudget(summary, 0, summary.length(), budget));
+            if (TokenEstimator.estimate(summary) > extractedTokens * (1 - compressionConfig.getLlmMinGain())) {
+                return extracted;
+            }
+            return summary;
+        } catch (Exception e) {
+            log.warn("大模型压缩失败，使用抽取结果", e);
+            return extracted;
+        }
     }
 
     /**
@@ -1,17 +1,36 @@
 package com.rag.ragbackend.service.impl;
 
+import com.rag.ragbackend.config.AnswerCacheConfig;
+import com.rag.ragbackend.config.ConversationConfig;
+import com.rag.ragbackend.config.SseConfig;
+import com.rag.ragbackend.manager.AdmissionGate;
+import com.rag.ragbackend.manager.ConversationMemory;
+import com.rag.ragbackend.manager.RagMetrics;
+import com.rag.ragbackend.manager.SemanticAnswerCache;
 import com.rag.ragbackend.manager.SseEmitterManager;
+import com.rag.ragbackend.pojo.dto.CompressedContext;
+import com.rag.ragbackend.pojo.dto.RetrievalOptions;
+import com.rag.ragbackend.pojo.dto.RetrievedChunk;
 import com.rag.ragbackend.pojo.resp.RAGResponse;
 import com.rag.ragbackend.pojo.resp.SseMessage;
 import com.rag.ragbackend.service.ChatService;
 import com.rag.ragbackend.service.ChromaRAGService;
 import com.rag.ragbackend.service.EmbeddingService;
+import com.rag.ragbackend.service.RetrievalService;
+import com.rag.ragbackend.utils.TokenCoalescer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.ai.document.Document;
 import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * @Description
@@ -24,68 +43,198 @@ import java.util.List;
 @RequiredArgsConstructor
 public class ChromaRAGServiceImpl implements ChromaRAGService {
 
-    private final ChromaServiceImpl chromaService;
+    private final RetrievalService retrievalService;
     private final ChatService chatService;
     private final SseEmitterManager sseManager;
+    private final EmbeddingService embeddingService;
+    private final SemanticAnswerCache answerCache;
+    private final ConversationMemory conversationMemory;
+    private final ConversationConfig conversationConfig;
+    private final SseConfig sseConfig;
+    private final AnswerCacheConfig answerCacheConfig;
+    private final RagMetrics ragMetrics;
+    private final AdmissionGate admissionGate;
+
+    /** 进行中的生成，key 为归一化问题 + 过滤条件 */
+    private final Map<String, Flux<String>> inflight = new ConcurrentHashMap<>();
 
 
     /** 核心 RAG 工作流 */
-    public RAGResponse chatWithRAG(String question) {
-        List<Document> chunks = chromaService.queryVectorStore(question, 3);
+    public RAGResponse chatWithRAG(String question, String sessionId, RetrievalOptions options) {
+        long start = System.nanoTime();
+        RetrievalOptions resolved = retrievalService.resolve(options);
+        // 会话历史与问题向量化并行读取
+        CompletableFuture<ConversationMemory.History> historyFuture = conversationMemory.loadAsync(sessionId);
+        float[] questionVector = ragMetrics.embedding("chat", () -> embeddingService.embed(question));
+        ConversationMemory.History history = historyFuture.join();
+        // 有历史时答案依赖上下文，不走语义缓存
+        if (history.isEmpty()) {
+            String cached = answerCache.lookup(questionVector, resolved.filterKey());
+            if (cached != null) {
+                conversationMemory.append(sessionId, question, cached);
+                return new RAGResponse(cached, null, null);
+            }
+        }
 
-        StringBuilder context = new StringBuilder();
-        for (Document chunk : chunks) {
-            context.append(chunk.getText()).append("\n");
+        long kbVersion = answerCache.version();
+        List<RetrievedChunk> chunks = ragMetrics.retrieval("chat",
+                () -> retrievalService.retrieve(question, questionVector, resolved));
+        List<String> texts = chunks.stream().map(RetrievedChunk::text).toList();
+        CompressedContext context = ragMetrics.prompt("chat", () -> chatService.CompressionChat(question, texts));
+        String prompt = buildPrompt(context.context(), history, question);
+        String str = ragMetrics.generation("chat", start, () -> chatService.callChatRag(prompt));
+        if (history.isEmpty()) {
+            answerCache.put(questionVector, resolved.filterKey(), str, kbVersion);
         }
+        conversationMemory.append(sessionId, question, str);
+        return new RAGResponse(str, texts, context.ratio());
+    }
 
-        String prompt = """
-                基于以下资料回答问题，请勿编造信息：
-                
-                【知识库内容】
-                %s
-                
-                【用户问题】
-                %s
-                """.formatted(context, question);
+    @Override
+    public Flux<String> streamChatWithRAG(String question, String sessionId, RetrievalOptions options) {
+        return stream(question, sessionId, options, "ragDb");
+    }
 
-        String str = chatService.callChatRag(prompt);
-        return new RAGResponse(str,null);
+    /**
+     * 流式问答，endpoint 为入口名（ask / ragDb / flux），用作指标标签。
+     * 订阅时才执行，全程不阻塞订阅线程：会话历史在检索线程池上读取，问题向量化在 boundedElastic 上执行，两者并行
+     */
+    private Flux<String> stream(String question, String sessionId, RetrievalOptions options, String endpoint) {
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            RetrievalOptions resolved = retrievalService.resolve(options);
+            Mono<ConversationMemory.History> history = Mono.fromFuture(() -> conversationMemory.loadAsync(sessionId));
+            Mono<float[]> questionVector = Mono.fromCallable(
+                            () -> ragMetrics.embedding(endpoint, () -> embeddingService.embed(question)))
+                    .subscribeOn(Schedulers.boundedElastic());
+            return Mono.zip(history, questionVector).flatMapMany(prepared -> answer(question, sessionId, resolved,
+                    prepared.getT1(), prepared.getT2(), endpoint, start));
+        });
     }
 
-    @Override
-    public Flux<String> streamChatWithRAG(String question) {
+    private Flux<String> answer(String question, String sessionId, RetrievalOptions resolved,
+                                ConversationMemory.History history, float[] questionVector, String endpoint, long start) {
+        if (history.isEmpty()) {
+            String cached = answerCache.lookup(questionVector, resolved.filterKey());
+            if (cached != null) {
+                // 语义缓存命中：按小片段快速回放，前端仍按 delta 流式渲染
+                conversationMemory.append(sessionId, question, cached);
+                return Flux.fromIterable(answerCache.replayChunks(cached));
+            }
+        }
 
-        List<Document> chunks = chromaService.queryVectorStore(question, 3);
+        // 无历史的问题答案只取决于问题和过滤条件，相同问题并发时共享一次生成；
+        // 准入名额只由真正发起的生成占用，加入进行中生成的请求不占
+        Flux<String> generation = admissionGate.guard(
+                generate(question, questionVector, resolved, history, endpoint, start));
+        Flux<String> stringFlux = history.isEmpty() && answerCacheConfig.isSingleFlight()
+                ? singleFlight(flightKey(question, resolved), generation)
+                : generation;
+
+        StringBuilder answer = new StringBuilder();
+        return stringFlux
+                .doOnNext(answer::append)
+                .doOnComplete(() -> conversationMemory.append(sessionId, question, answer.toString()));
+    }
+
+    /**
+     * 检索 + 压缩 + 流式生成，订阅时才执行；完整生成结束后才写入缓存，出错或被取消的不写。
+     * 检索非阻塞，压缩（LLM 模式会调用大模型）跟在检索之后运行在 boundedElastic 上，生成流由 Ollama 按需推送
+     */
+    private Flux<String> generate(String question, float[] questionVector, RetrievalOptions resolved,
+                                  ConversationMemory.History history, String endpoint, long start) {
+        return Flux.defer(() -> {
+            long kbVersion = answerCache.version();
+            return ragMetrics.retrieval(endpoint, retrievalService.retrieveAsync(question, questionVector, resolved))
+                    .map(chunks -> ragMetrics.prompt(endpoint, () -> buildPrompt(chatService.CompressionChat(question,
+                            chunks.stream().map(RetrievedChunk::text).toList()).context(), history, question)))
+                    .flatMapMany(prompt -> {
+                        StringBuilder answer = new StringBuilder();
+                        return ragMetrics.generation(endpoint, start, chatService.streamChatRag(prompt))
+                                .doOnNext(answer::append)
+                                .doOnComplete(() -> {
+                                    if (history.isEmpty()) {
+                                        answerCache.put(questionVector, resolved.filterKey(), answer.toString(), kbVersion);
+                                    }
+                                });
+                    });
+        });
+    }
 
-        StringBuilder context = new StringBuilder();
-        for (Document chunk : chunks) {
-            context.append(chunk.getText()).append("\n");
+    /**
+     * 相同 key 的生成同时只有一个：第一个请求发起生成，之后加入的请求先收到已生成的全部 token 再接收后续 token。
+     * 所有订阅者都取消时上游随之取消；生成结束（完成、出错或取消）后移除，之后的相同问题由答案缓存承接
+     */
+    private Flux<String> singleFlight(String key, Flux<String> upstream) {
+        AtomicReference<Flux<String>> self = new AtomicReference<>();
+        Flux<String> shared = upstream
+                .doFinally(signal -> inflight.remove(key, self.get()))
+                .replay()
+                .refCount();
+        self.set(shared);
+        Flux<String> existing = inflight.putIfAbsent(key, shared);
+        if (existing != null) {
+            log.debug("合并到进行中的生成, key: {}", key);
+            return existing;
         }
+        return shared;
+    }
+
+    /** 归一化问题（去首尾空白和结尾标点、合并空白、小写）+ 检索过滤条件 */
+    private static String flightKey(String question, RetrievalOptions resolved) {
+        String normalized = question.strip()
+                .replaceAll("[\\s\\p{Punct}？！。，、；：]+$", "")
+                .replaceAll("\\s+", " ")
+                .toLowerCase(Locale.ROOT);
+        return normalized + "|" + resolved.filterKey();
+    }
 
-        String prompt = """
-                基于以下资料回答问题，请勿编造信息：
+    private String buildPrompt(String context, ConversationMemory.History history, String question) {
+        return buildPrompt(context, history, question, conversationConfig.getMaxHistoryTokens());
+    }
+
+    /** 包内可见，供基准测试直接调用 */
+    static String buildPrompt(String context, ConversationMemory.History history, String question, int maxHistoryTokens) {
+        if (history.isEmpty()) {
+            return """
+                    基于以下资料回答问题，请勿编造信息：
+                    
+                    【知识库内容】
+                    %s
+                    
+                    【用户问题】
+                    %s
+                    """.formatted(context, question);
+        }
+        return """
+                基于以下资料回答问题，请勿编造信息，结合对话历史理解问题中的指代：
                 
+                【对话历史】
+                %s
                 【知识库内容】
                 %s
                 
                 【用户问题】
                 %s
-                """.formatted(context, question);
+                """.formatted(history.render(maxHistoryTokens), context, question);
+    }
 
-        Flux<String> stringFlux = chatService.streamChatRag(prompt);
-        return stringFlux;
+    @Override
+    public Flux<String> reactiveStream(String question, String sessionId, RetrievalOptions options) {
+        return stream(question, sessionId, options, "flux");
     }
 
     @Override
-    public void asyncGenerate(String taskId, String question) {
+    public void asyncGenerate(String taskId, String question, String sessionId, RetrievalOptions options) {
         log.info("开始生成, taskId: {}", taskId);
-        Flux<String> stream = this.streamChatWithRAG(question);
+        Flux<String> stream = TokenCoalescer.coalesce(stream(question, sessionId, options, "ask"),
+                sseConfig.getCoalesceWindow(), sseConfig.getCoalesceMaxTokens());
 
-        stream.subscribe(
+        // 交给任务注册表，主动取消或客户端断开超过宽限期时取消上游
+        Disposable upstream = stream.subscribe(
                 token -> sseManager.send(taskId, SseMessage.delta(token)),
                 error -> {
-                    sseManager.send(taskId,
-                            new SseMessage("error", error.getMessage()));
+                    sseManager.send(taskId, SseMessage.error(error));
                     sseManager.complete(taskId);
                 },
                 () -> {
@@ -93,6 +242,7 @@ public class ChromaRAGServiceImpl implements ChromaRAGService {
                     sseManager.complete(taskId);
                 }
         );
+        sseManager.bind(taskId, upstream);
     }
 
 }
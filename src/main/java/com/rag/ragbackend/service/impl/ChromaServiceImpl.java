@@ -1,40 +1,255 @@
 package com.rag.ragbackend.service.impl;
 
+import com.rag.ragbackend.manager.DownstreamLimiter;
+import com.rag.ragbackend.pojo.dto.RetrievalOptions;
+import com.rag.ragbackend.pojo.dto.RetrievedChunk;
 import com.rag.ragbackend.service.ChromaService;
+import com.rag.ragbackend.service.EmbeddingService;
+import com.rag.ragbackend.utils.VectorUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chroma.vectorstore.ChromaApi;
 import org.springframework.ai.document.Document;
-import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
+@ConditionalOnProperty(name = "spring.ai.vectorstore.type", havingValue = "chroma", matchIfMissing = true)
 public class ChromaServiceImpl implements ChromaService {
 
     private final VectorStore vectorStore;
 
+    private final ChromaApi chromaApi;
+
+    private final EmbeddingService embeddingService;
+
+    private final DownstreamLimiter downstreamLimiter;
+
+    private final WebClient chromaClient;
+
+    @Value("${spring.ai.vectorstore.chroma.collection-name}")
+    private String collectionName;
+
+    @Value("${spring.ai.vectorstore.chroma.tenant-name}")
+    private String tenantName;
+
+    @Value("${spring.ai.vectorstore.chroma.database-name}")
+    private String databaseName;
+
+    private volatile String collectionId;
+
     /** 插入向量 */
     @Override
-    public void addEmbedding(String id, String text, List<Double> embedding) {
-        log.info("添加向量 id={}, text={}, embedding={}", id, text, embedding);
-        Document document = new Document(id, text, Map.of("embedding", embedding));
-        vectorStore.add(List.of(document));
+    public void addEmbedding(String id, String text, float[] embedding) {
+        addEmbeddings(List.of(new Document(id, text, Map.of())), List.of(embedding));
+    }
 
+    /**
+     * 批量插入向量：直接把已算好的向量 upsert 到 Chroma。
+     * 不走 vectorStore.add，否则 ChromaVectorStore 会对文本再 embed 一次
+     */
+    @Override
+    public void addEmbeddings(List<Document> documents, List<float[]> embeddings) {
+        if (documents.isEmpty()) {
+            return;
+        }
+        List<String> ids = new ArrayList<>(documents.size());
+        List<String> texts = new ArrayList<>(documents.size());
+        List<Map<String, Object>> metadata = new ArrayList<>(documents.size());
+        for (Document doc : documents) {
+            ids.add(doc.getId());
+            texts.add(doc.getText());
+            metadata.add(doc.getMetadata());
+        }
+        log.debug("批量添加向量 size={}", ids.size());
+        downstreamLimiter.run(DownstreamLimiter.Downstream.CHROMA, () -> chromaApi.upsertEmbeddings(tenantName,
+                databaseName, collectionId(), new ChromaApi.AddEmbeddingsRequest(ids, embeddings, metadata, texts)));
     }
 
+    @Override
+    public void delete(List<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        downstreamLimiter.run(DownstreamLimiter.Downstream.CHROMA, () -> vectorStore.delete(ids));
+    }
+
+    /**
+     * 查询向量走 EmbeddingService（带缓存），不再由 ChromaVectorStore 对查询文本重新 embed
+     */
     @Override
     public List<Document> queryVectorStore(String queryText, int topK) {
-        List<Document> documents = vectorStore.similaritySearch(SearchRequest.builder()
-                .query(queryText)
-                .build());
+        return queryVectorStore(embeddingService.embed(queryText), topK);
+    }
+
+    @Override
+    public List<Document> queryVectorStore(float[] queryEmbedding, int topK) {
+        List<Document> documents = new ArrayList<>();
+        for (ChromaApi.Embedding embedding : query(queryEmbedding, topK, null)) {
+            documents.add(toDocument(embedding));
+        }
         return documents;
     }
+
+    @Override
+    public List<RetrievedChunk> search(float[] queryEmbedding, RetrievalOptions options) {
+        return toChunks(queryEmbedding, query(queryEmbedding, options.getTopK(), buildWhere(options)));
+    }
+
+    /**
+     * 经 WebClient 查询，等待 Chroma 响应期间不占线程
+     */
+    @Override
+    public Mono<List<RetrievedChunk>> searchAsync(float[] queryEmbedding, RetrievalOptions options) {
+        ChromaApi.QueryRequest request = new ChromaApi.QueryRequest(queryEmbedding, options.getTopK(), buildWhere(options));
+        return collectionIdAsync()
+                .flatMap(id -> downstreamLimiter.mono(DownstreamLimiter.Downstream.CHROMA, () -> chromaClient.post()
+                        .uri("/tenants/{tenant}/databases/{database}/collections/{id}/query", tenantName, databaseName, id)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .bodyValue(request)
+                        .retrieve()
+                        .bodyToMono(ChromaApi.QueryResponse.class)))
+                .map(response -> toChunks(queryEmbedding, chromaApi.toEmbeddingResponseList(response)))
+                .defaultIfEmpty(List.of());
+    }
+
+    private static List<RetrievedChunk> toChunks(float[] queryEmbedding, List<ChromaApi.Embedding> embeddings) {
+        List<RetrievedChunk> chunks = new ArrayList<>(embeddings.size());
+        for (ChromaApi.Embedding embedding : embeddings) {
+            double distance = embedding.distances() == null ? 1.0 : embedding.distances();
+            // collection 的距离度量取决于创建方式（默认 l2），有向量时直接算余弦相似度，阈值语义才与度量无关
+            double score = embedding.embedding() != null && embedding.embedding().length == queryEmbedding.length
+                    ? VectorUtil.cosine(queryEmbedding, embedding.embedding())
+                    : 1.0 - distance;
+            chunks.add(new RetrievedChunk(embedding.id(), embedding.document(),
+                    embedding.metadata() == null ? Map.of() : embedding.metadata(), score, embedding.embedding()));
+        }
+        chunks.sort(Comparator.comparingDouble(RetrievedChunk::score).reversed());
+        return chunks;
+    }
+
+    @Override
+    public List<RetrievedChunk> getByIds(List<String> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        return get(new ChromaApi.GetEmbeddingsRequest(ids, null, ids.size(), 0));
+    }
+
+    @Override
+    public void forEachChunk(int batchSize, Consumer<List<RetrievedChunk>> consumer) {
+        int offset = 0;
+        while (true) {
+            List<RetrievedChunk> batch = get(new ChromaApi.GetEmbeddingsRequest(null, null, batchSize, offset));
+            if (batch.isEmpty()) {
+                return;
+            }
+            consumer.accept(batch);
+            if (batch.size() < batchSize) {
+                return;
+            }
+            offset += batch.size();
+        }
+    }
+
+    private List<RetrievedChunk> get(ChromaApi.GetEmbeddingsRequest request) {
+        ChromaApi.GetEmbeddingResponse response = downstreamLimiter.call(DownstreamLimiter.Downstream.CHROMA,
+                () -> chromaApi.getEmbeddings(tenantName, databaseName, collectionId(), request));
+        if (response == null || response.ids() == null) {
+            return List.of();
+        }
+        List<RetrievedChunk> chunks = new ArrayList<>(response.ids().size());
+        for (int i = 0; i < response.ids().size(); i++) {
+            Map<String, Object> metadata = response.metadata() == null || response.metadata().get(i) == null
+                    ? Map.of() : new HashMap<String, Object>(response.metadata().get(i));
+            chunks.add(new RetrievedChunk(response.ids().get(i),
+                    response.documents() == null ? null : response.documents().get(i),
+                    metadata, 0,
+                    response.embeddings() == null ? null : response.embeddings().get(i)));
+        }
+        return chunks;
+    }
+
+    private List<ChromaApi.Embedding> query(float[] queryEmbedding, int topK, Map<String, Object> where) {
+        ChromaApi.QueryResponse response = downstreamLimiter.call(DownstreamLimiter.Downstream.CHROMA,
+                () -> chromaApi.queryCollection(tenantName, databaseName, collectionId(),
+                        new ChromaApi.QueryRequest(queryEmbedding, topK, where)));
+        return chromaApi.toEmbeddingResponseList(response);
+    }
+
+    /**
+     * 过滤条件转成 Chroma 的 where：文档 $in、租户 $eq、标签任一命中 $or，多个条件 $and 组合
+     */
+    private static Map<String, Object> buildWhere(RetrievalOptions options) {
+        List<Map<String, Object>> conditions = new ArrayList<>(3);
+        if (options.getDocIds() != null && !options.getDocIds().isEmpty()) {
+            conditions.add(Map.of(RetrievalOptions.DOC_ID, Map.of("$in", options.getDocIds())));
+        }
+        if (options.getTenant() != null) {
+            conditions.add(Map.of(RetrievalOptions.TENANT, Map.of("$eq", options.getTenant())));
+        }
+        if (options.getTags() != null && !options.getTags().isEmpty()) {
+            List<Map<String, Object>> anyTag = new ArrayList<>(options.getTags().size());
+            for (String tag : options.getTags()) {
+                anyTag.add(Map.of(RetrievalOptions.tagKey(tag), Map.of("$eq", true)));
+            }
+            conditions.add(anyTag.size() == 1 ? anyTag.get(0) : Map.of("$or", anyTag));
+        }
+        if (conditions.isEmpty()) {
+            return null;
+        }
+        return conditions.size() == 1 ? conditions.get(0) : Map.of("$and", conditions);
+    }
+
+    /** 与 ChromaVectorStore 的转换保持一致：metadata 带上 distance，score = 1 - distance */
+    private static Document toDocument(ChromaApi.Embedding embedding) {
+        double distance = embedding.distances() == null ? 1.0 : embedding.distances();
+        Map<String, Object> metadata = embedding.metadata() == null
+                ? new HashMap<>() : new HashMap<>(embedding.metadata());
+        metadata.put("distance", distance);
+        return Document.builder()
+                .id(embedding.id())
+                .text(embedding.document())
+                .metadata(metadata)
+                .score(1.0 - distance)
+                .build();
+    }
+
+    /** 已解析过直接返回，首次解析是同步调用，放到 boundedElastic */
+    private Mono<String> collectionIdAsync() {
+        String id = collectionId;
+        return id != null ? Mono.just(id) : Mono.fromCallable(this::collectionId).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Chroma 的写接口按 collection id 寻址，首次使用时解析并缓存
+     * （collection 由 ChromaVectorStore 初始化时创建）
+     */
+    private String collectionId() {
+        String id = collectionId;
+        if (id == null) {
+            ChromaApi.Collection collection = chromaApi.getCollection(tenantName, databaseName, collectionName);
+            if (collection == null) {
+                throw new IllegalStateException("Chroma collection not found: " + collectionName);
+            }
+            id = collection.id();
+            collectionId = id;
+        }
+        return id;
+    }
 }
@@ -0,0 +1,73 @@
+package com.rag.ragbackend.service.impl;
+
+import com.rag.ragbackend.service.ChunkManifestService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @Description 基于 Redis Set 的 chunk 清单，key 为 rag:manifest:{docId}
+ * @Version 1.0.0
+ * @Date 2026-10-18 15:32
+ * @Author by zjh
+ */
+@Service
+@RequiredArgsConstructor
+public class ChunkManifestServiceImpl implements ChunkManifestService {
+
+    private static final String KEY_PREFIX = "rag:manifest:";
+
+    /** 单条 SADD/SREM 命令携带的成员数上限 */
+    private static final int COMMAND_BATCH = 1000;
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    @Override
+    public Set<String> load(String docId) {
+        Set<Object> members = redisTemplate.opsForSet().members(KEY_PREFIX + docId);
+        if (members == null || members.isEmpty()) {
+            return Set.of();
+        }
+        Set<String> ids = new HashSet<>(members.size() * 2);
+        for (Object member : members) {
+            ids.add(member.toString());
+        }
+        return ids;
+    }
+
+    @Override
+    public void addAll(String docId, Collection<String> chunkIds) {
+        for (List<String> part : partition(chunkIds)) {
+            redisTemplate.opsForSet().add(KEY_PREFIX + docId, part.toArray());
+        }
+    }
+
+    @Override
+    public void removeAll(String docId, Collection<String> chunkIds) {
+        for (List<String> part : partition(chunkIds)) {
+            redisTemplate.opsForSet().remove(KEY_PREFIX + docId, part.toArray());
+        }
+    }
+
+    private static List<List<String>> partition(Collection<String> ids) {
+        List<List<String>> parts = new ArrayList<>();
+        List<String> current = new ArrayList<>(Math.min(ids.size(), COMMAND_BATCH));
+        for (String id : ids) {
+            current.add(id);
+            if (current.size() == COMMAND_BATCH) {
+                parts.add(current);
+                current = new ArrayList<>(COMMAND_BATCH);
+            }
+        }
+        if (!current.isEmpty()) {
+            parts.add(current);
+        }
+        return parts;
+    }
+}
@@ -1,44 +1,235 @@
 package com.rag.ragbackend.service.impl;
 
+import com.rag.ragbackend.config.IngestionConfig;
+import com.rag.ragbackend.manager.Bm25Index;
+import com.rag.ragbackend.manager.RagMetrics;
+import com.rag.ragbackend.manager.SemanticAnswerCache;
+import com.rag.ragbackend.pojo.dto.IngestionStats;
+import com.rag.ragbackend.pojo.dto.RetrievalOptions;
+import com.rag.ragbackend.service.ChromaService;
+import com.rag.ragbackend.service.ChunkManifestService;
 import com.rag.ragbackend.service.DataUploadService;
 import com.rag.ragbackend.service.EmbeddingService;
-import com.rag.ragbackend.utils.ChunkUtil;
+import com.rag.ragbackend.service.IngestionListener;
+import com.rag.ragbackend.utils.MD5Util;
+import com.rag.ragbackend.utils.TextSegments;
+import com.rag.ragbackend.utils.chunk.Chunker;
+import com.rag.ragbackend.utils.chunk.TextChunk;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 /**
- * @Description
+ * @Description 文档入库流水线：流式切分 → 内容哈希去重 → 按批并发向量化 → 批量写入向量库与 BM25 索引
  * @Version 1.0.0
  * @Date 2025-12-9 21:23
  * @Author by zjh
  */
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class DataUploadServiceImpl implements DataUploadService {
 
     private final EmbeddingService embeddingService;
-    private final ChromaServiceImpl chromaService;
+    private final ChromaService chromaService;
+    private final ChunkManifestService manifestService;
+    private final SemanticAnswerCache answerCache;
+    private final Bm25Index bm25Index;
+    private final IngestionConfig ingestionConfig;
+    private final Executor embedExecutor;
+    private final Chunker chunker;
+    private final RagMetrics ragMetrics;
 
-    /** 将一整个文档写入 Chroma（自动切 chunk） */
+    /** 将一整个文档写入 Chroma（自动切 chunk），文档标识取内容哈希 */
     @Override
     public int indexDocument(String text) {
-//        chromaService.createCollectionIfNotExists();
-        List<String> chunks = ChunkUtil.split(text, 400);
-        int count = 0;
-        for (int i = 0; i < chunks.size(); i++) {
-            String chunk = chunks.get(i);
+        return indexDocument("text_" + MD5Util.md5Hex(text), Map.of(), TextSegments.of(text),
+                IngestionListener.NONE);
+    }
+
+    /**
+     * 增量入库：chunk id 由 文档标识 + chunk 内容 哈希得到，
+     * 清单里已有的 chunk 跳过向量化与写入，本次未出现的旧 chunk 在成功结束后删除。
+     * 不同租户的同名文件互相独立：清单与 chunk id 按 租户/文档标识 区分
+     */
+    @Override
+    public int indexDocument(String docId, Map<String, Object> metadata, TextSegments segments,
+                             IngestionListener listener) {
+        IngestionStats stats = new IngestionStats();
+        Iterator<TextChunk> chunks = chunker.chunks(segments);
+        Object tenant = metadata.get(RetrievalOptions.TENANT);
+        String docKey = tenant == null ? docId : tenant + "/" + docId;
+
+        Set<String> previous = manifestService.load(docKey);
+        Set<String> seen = new HashSet<>(Math.max(16, previous.size() * 2));
+        int batchSize = Math.max(1, ingestionConfig.getEmbedBatchSize());
+        int parallelism = Math.max(1, ingestionConfig.getEmbedParallelism());
+
+        // 在途批次按提交顺序排队，超过并发上限时先消费最早的批次，保证写入顺序且内存有界
+        Deque<CompletableFuture<EmbeddedBatch>> inflight = new ArrayDeque<>(parallelism);
+        WriteBuffer buffer = new WriteBuffer(docKey, ingestionConfig.getWriteBatchSize(), stats, listener);
+        int index = 0;
+        try {
+            while (true) {
+                if (listener.isCancelled()) {
+                    throw new CancellationException("入库任务已取消");
+                }
+                // 提取+切分阶段：从迭代器拉取一批需要入库的 chunk（按需读取下一段文本），只在这里把 chunk 视图物化为字符串
+                long begin = System.nanoTime();
+                List<Document> pending = new ArrayList<>(batchSize);
+                int pulled = 0;
+                int skipped = 0;
+                while (pending.size() < batchSize && chunks.hasNext()) {
+                    String text = chunks.next().toString();
+                    String id = chunkId(docKey, text);
+                    pulled++;
+                    if (!seen.add(id) || previous.contains(id)) {
+                        // 文档内重复或内容未变化，无需重新向量化
+                        skipped++;
+                    } else {
+                        Map<String, Object> chunkMetadata = new HashMap<>(metadata);
+                        chunkMetadata.put(RetrievalOptions.DOC_ID, docId);
+                        chunkMetadata.put("chunk_index", index);
+                        pending.add(new Document(id, text, chunkMetadata));
+                    }
+                    index++;
+                }
+                long splitNanos = System.nanoTime() - begin;
+                stats.recordChunked(pulled, splitNanos);
+                ragMetrics.ingestion("split", pulled, splitNanos);
+                stats.recordSkipped(skipped);
+                if (pulled == 0) {
+                    break;
+                }
+                if (pending.isEmpty()) {
+                    continue;
+                }
+
+                if (inflight.size() >= parallelism) {
+                    buffer.append(inflight.poll().join());
+                }
+                inflight.add(CompletableFuture.supplyAsync(() -> embed(pending, stats, listener), embedExecutor));
+            }
+            while (!inflight.isEmpty()) {
+                buffer.append(inflight.poll().join());
+            }
+            buffer.flush();
+        } catch (RuntimeException e) {
+            inflight.forEach(f -> f.cancel(true));
+            if (e instanceof CompletionException && e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+
+        // 只有完整跑完才能确定哪些旧 chunk 已经不存在
+        List<String> vanished = new ArrayList<>();
+        for (String id : previous) {
+            if (!seen.contains(id)) {
+                vanished.add(id);
+            }
+        }
+        if (!vanished.isEmpty()) {
+            chromaService.delete(vanished);
+            bm25Index.removeAll(vanished);
+            manifestService.removeAll(docKey, vanished);
+            answerCache.invalidateAll();
+        }
+
+        log.info("文档入库完成 docId={} | 共 {} 个 chunk, 未变化 {} 个, 删除 {} 个 | {}",
+                docKey, seen.size(), stats.getSkipped(), vanished.size(), stats.summary());
+        return seen.size();
+    }
+
+    /** chunk id = md5(文档标识 + 内容)，同一文档内容不变则 id 不变 */
+    private static String chunkId(String docId, String text) {
+        return MD5Util.md5Hex(docId + '\0' + text);
+    }
 
-            var vec = embeddingService.embedText(chunk);
+    /** 向量化阶段：一批 chunk 一次 embed 请求 */
+    private EmbeddedBatch embed(List<Document> documents, IngestionStats stats, IngestionListener listener) {
+        List<String> texts = new ArrayList<>(documents.size());
+        for (Document doc : documents) {
+            texts.add(doc.getText());
+        }
+        long begin = System.nanoTime();
+        float[][] vectors = embeddingService.embedBatch(texts);
+        long nanos = System.nanoTime() - begin;
+        stats.recordEmbedded(texts.size(), nanos);
+        ragMetrics.ingestion("embed", texts.size(), nanos);
+        listener.onProgress(stats);
+        return new EmbeddedBatch(documents, Arrays.asList(vectors));
+    }
 
-            // id 不能重复
-            String id = "doc_" + System.currentTimeMillis() + "_" + i;
+    private record EmbeddedBatch(List<Document> documents, List<float[]> embeddings) {
+    }
 
-            chromaService.addEmbedding(id, chunk, vec);
+    /**
+     * 写入阶段：攒够 writeBatchSize 再整批写入向量库与 BM25 索引，并登记到 chunk 清单
+     */
+    private class WriteBuffer {
+
+        private final String docId;
+        private final int capacity;
+        private final IngestionStats stats;
+        private final IngestionListener listener;
+        private final List<Document> documents;
+        private final List<float[]> embeddings;
+
+        WriteBuffer(String docId, int capacity, IngestionStats stats, IngestionListener listener) {
+            this.docId = docId;
+            this.capacity = Math.max(1, capacity);
+            this.stats = stats;
+            this.listener = listener;
+            this.documents = new ArrayList<>(this.capacity);
+            this.embeddings = new ArrayList<>(this.capacity);
+        }
+
+        void append(EmbeddedBatch batch) {
+            documents.addAll(batch.documents());
+            embeddings.addAll(batch.embeddings());
+            if (documents.size() >= capacity) {
+                flush();
+            }
+        }
 
-            count++;
+        void flush() {
+            if (documents.isEmpty()) {
+                return;
+            }
+            long begin = System.nanoTime();
+            chromaService.addEmbeddings(documents, embeddings);
+            long nanos = System.nanoTime() - begin;
+            stats.recordStored(documents.size(), nanos);
+            ragMetrics.ingestion("store", documents.size(), nanos);
+            bm25Index.addAll(documents);
+            // 写入成功后再登记到清单，中途失败或取消时清单只包含确实已写入的 chunk
+            List<String> ids = new ArrayList<>(documents.size());
+            for (Document doc : documents) {
+                ids.add(doc.getId());
+            }
+            manifestService.addAll(docId, ids);
+            // 知识库已变化，基于旧内容生成的答案不能再复用
+            answerCache.invalidateAll();
+            documents.clear();
+            embeddings.clear();
+            listener.onProgress(stats);
         }
-        return count;
     }
 }
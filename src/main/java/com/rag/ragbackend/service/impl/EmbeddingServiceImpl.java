@@ -1,122 +1,89 @@
 package com.rag.ragbackend.service.impl;
 
+import com.rag.ragbackend.manager.DownstreamLimiter;
 import com.rag.ragbackend.service.EmbeddingService;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.ollama.OllamaEmbeddingModel;
 import org.springframework.stereotype.Service;
-import java.lang.reflect.Method;
-import java.util.ArrayList;
+
 import java.util.List;
-import java.util.logging.Logger;
 
 /**
- * 兼容多种返回类型的 EmbeddingService。
- * - 将 embeddingModel.embed(text) 的返回值解析为 List<Double>
- * - 打印实际返回类型，便于调试
+ * 基于 OllamaEmbeddingModel 的 EmbeddingService。
+ * - Spring AI 的 EmbeddingModel 契约直接返回 float[] / List<float[]>，热路径上不做类型探测、反射与装箱
+ * - 启动时解析一次向量维度，之后只做长度校验
  */
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class EmbeddingServiceImpl implements EmbeddingService {
 
-    private static final Logger logger = Logger.getLogger(EmbeddingServiceImpl.class.getName());
+    private static final float[] EMPTY = new float[0];
 
     private final OllamaEmbeddingModel embeddingModel;
 
+    private final DownstreamLimiter downstreamLimiter;
+
+    private volatile int dimensions = -1;
+
     /**
-     * 返回 List<Double>，适合存入向量库或做相似度计算
+     * 启动时解析一次维度；Ollama 未就绪时不阻断启动，首次调用时再解析
      */
-    @Override
-    public List<Double> embedText(String text) {
-        Object resp = embeddingModel.embed(text); // 可能是多种类型
-
-        if (resp == null) {
-            return List.of();
+    @PostConstruct
+    public void init() {
+        try {
+            dimensions = embeddingModel.dimensions();
+            log.info("Embedding 模型维度：{}", dimensions);
+        } catch (Exception e) {
+            log.warn("Embedding 模型维度解析失败，将在首次调用时确定：{}", e.getMessage());
         }
+    }
 
-        logger.info(() -> "Embedding raw response class: " + resp.getClass().getName());
-
-        List<Double> vec = extractVector(resp);
-        logger.info(() -> "Embedding vector length: " + vec.size());
-        return vec;
+    @Override
+    public float[] embed(String text) {
+        if (text == null || text.isEmpty()) {
+            return EMPTY;
+        }
+        float[] vector = downstreamLimiter.call(DownstreamLimiter.Downstream.OLLAMA_EMBED, () -> embeddingModel.embed(text));
+        checkDimensions(vector);
+        return vector;
     }
 
     /**
-     * 尝试将不同类型的 embedding 返回值转换为 List<Double>
+     * 走 EmbeddingModel.embed(List) 多输入接口，一次 HTTP 往返完成整批
      */
-    @SuppressWarnings("unchecked")
-    private List<Double> extractVector(Object obj) {
-        // 1) 原生数组
-        if (obj instanceof double[]) {
-            double[] arr = (double[]) obj;
-            List<Double> list = new ArrayList<>(arr.length);
-            for (double v : arr) list.add(v);
-            return list;
+    @Override
+    public float[][] embedBatch(List<String> texts) {
+        if (texts == null || texts.isEmpty()) {
+            return new float[0][];
         }
-        if (obj instanceof float[]) {
-            float[] arr = (float[]) obj;
-            List<Double> list = new ArrayList<>(arr.length);
-            for (float v : arr) list.add((double) v);
-            return list;
+        List<float[]> vectors = downstreamLimiter.call(DownstreamLimiter.Downstream.OLLAMA_EMBED, () -> embeddingModel.embed(texts));
+        if (vectors.size() != texts.size()) {
+            throw new IllegalStateException("Embedding batch size mismatch: expect " + texts.size()
+                    + ", got " + vectors.size());
         }
-
-        // 2) List<?>
-        if (obj instanceof List<?>) {
-            List<?> raw = (List<?>) obj;
-            List<Double> out = new ArrayList<>(raw.size());
-            for (Object e : raw) {
-                if (e instanceof Number) {
-                    out.add(((Number) e).doubleValue());
-                } else {
-                    try {
-                        out.add(Double.parseDouble(e.toString()));
-                    } catch (Exception ex) {
-                        // 非数值，跳过或抛异常
-                    }
-                }
-            }
-            return out;
+        float[][] out = new float[vectors.size()][];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = vectors.get(i);
+            checkDimensions(out[i]);
         }
+        return out;
+    }
 
-        // 3) 常见 getter 名称，通过反射调用
-        String[] candidateGetters = {
-                "getValues", "getValue", "getEmbedding", "getEmbeddings", "getOutput", "getVector", "getData"
-        };
-        for (String getter : candidateGetters) {
-            try {
-                Method m = obj.getClass().getMethod(getter);
-                Object val = m.invoke(obj);
-                if (val != null) {
-                    return extractVector(val); // 递归处理返回值
-                }
-            } catch (NoSuchMethodException ignored) {
-                // 忽略，尝试下一个 getter
-            } catch (Exception ex) {
-                logger.warning(() -> "Invoke getter " + getter + " failed: " + ex.getMessage());
-            }
-        }
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
 
-        // 4) toString 解析（兜底，不推荐）
-        try {
-            String s = obj.toString();
-            // 如果字符串是 [x,y,z] 格式，可以简单解析
-            if (s.startsWith("[") && s.endsWith("]")) {
-                String inner = s.substring(1, s.length() - 1);
-                String[] parts = inner.split(",");
-                List<Double> out = new ArrayList<>(parts.length);
-                for (String p : parts) {
-                    try {
-                        out.add(Double.parseDouble(p.trim()));
-                    } catch (Exception e) {
-                        // skip
-                    }
-                }
-                if (!out.isEmpty()) return out;
-            }
-        } catch (Exception ignored) {
+    private void checkDimensions(float[] vector) {
+        int expect = dimensions;
+        if (expect < 0) {
+            dimensions = vector.length;
+        } else if (vector.length != expect) {
+            throw new IllegalStateException("Embedding dimension mismatch: expect " + expect
+                    + ", got " + vector.length);
         }
-
-        // 无法解析，抛出异常提示开发者
-        throw new IllegalStateException("Unsupported embedding response type: " + obj.getClass().getName()
-                + ". Inspect logs to see available methods/fields.");
     }
 }
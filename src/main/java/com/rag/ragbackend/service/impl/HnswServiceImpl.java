@@ -0,0 +1,112 @@
+package com.rag.ragbackend.service.impl;
+
+import com.rag.ragbackend.manager.hnsw.HnswVectorStore;
+import com.rag.ragbackend.pojo.dto.RetrievalOptions;
+import com.rag.ragbackend.pojo.dto.RetrievedChunk;
+import com.rag.ragbackend.service.ChromaService;
+import com.rag.ragbackend.service.EmbeddingService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * @Description 基于进程内 HNSW 向量库的实现，检索不经过网络；spring.ai.vectorstore.type=hnsw 时启用
+ * @Version 1.0.0
+ * @Date 2026-10-18 19:15
+ * @Author by zjh
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "spring.ai.vectorstore.type", havingValue = "hnsw")
+public class HnswServiceImpl implements ChromaService {
+
+    private final HnswVectorStore vectorStore;
+
+    private final EmbeddingService embeddingService;
+
+    @Override
+    public void addEmbedding(String id, String text, float[] embedding) {
+        addEmbeddings(List.of(new Document(id, text, Map.of())), List.of(embedding));
+    }
+
+    @Override
+    public void addEmbeddings(List<Document> documents, List<float[]> embeddings) {
+        log.debug("批量添加向量 size={}", documents.size());
+        vectorStore.add(documents, embeddings);
+    }
+
+    @Override
+    public void delete(List<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        vectorStore.delete(ids);
+    }
+
+    @Override
+    public List<Document> queryVectorStore(String queryText, int topK) {
+        return queryVectorStore(embeddingService.embed(queryText), topK);
+    }
+
+    @Override
+    public List<Document> queryVectorStore(float[] queryEmbedding, int topK) {
+        List<Document> documents = new ArrayList<>();
+        for (RetrievedChunk chunk : vectorStore.search(queryEmbedding, topK, null)) {
+            documents.add(HnswVectorStore.toDocument(chunk));
+        }
+        return documents;
+    }
+
+    @Override
+    public List<RetrievedChunk> search(float[] queryEmbedding, RetrievalOptions options) {
+        return vectorStore.search(queryEmbedding, options.getTopK(), buildFilter(options));
+    }
+
+    @Override
+    public List<RetrievedChunk> getByIds(List<String> ids) {
+        return vectorStore.get(ids);
+    }
+
+    @Override
+    public void forEachChunk(int batchSize, Consumer<List<RetrievedChunk>> consumer) {
+        vectorStore.forEach(batchSize, consumer);
+    }
+
+    /**
+     * 过滤条件转成 Spring AI 过滤表达式，语义与 Chroma 的 where 一致：文档 IN、租户 EQ、标签任一命中 OR，多个条件 AND
+     */
+    private static Filter.Expression buildFilter(RetrievalOptions options) {
+        Filter.Expression filter = null;
+        if (options.getDocIds() != null && !options.getDocIds().isEmpty()) {
+            filter = and(filter, new Filter.Expression(Filter.ExpressionType.IN,
+                    new Filter.Key(RetrievalOptions.DOC_ID), new Filter.Value(options.getDocIds())));
+        }
+        if (options.getTenant() != null) {
+            filter = and(filter, new Filter.Expression(Filter.ExpressionType.EQ,
+                    new Filter.Key(RetrievalOptions.TENANT), new Filter.Value(options.getTenant())));
+        }
+        if (options.getTags() != null && !options.getTags().isEmpty()) {
+            Filter.Expression anyTag = null;
+            for (String tag : options.getTags()) {
+                Filter.Expression hasTag = new Filter.Expression(Filter.ExpressionType.EQ,
+                        new Filter.Key(RetrievalOptions.tagKey(tag)), new Filter.Value(true));
+                anyTag = anyTag == null ? hasTag : new Filter.Expression(Filter.ExpressionType.OR, anyTag, hasTag);
+            }
+            filter = and(filter, anyTag);
+        }
+        return filter;
+    }
+
+    private static Filter.Expression and(Filter.Expression left, Filter.Expression right) {
+        return left == null ? right : new Filter.Expression(Filter.ExpressionType.AND, left, right);
+    }
+}
@@ -0,0 +1,147 @@
+package com.rag.ragbackend.service.impl;
+
+import com.rag.ragbackend.config.RetrievalConfig;
+import com.rag.ragbackend.pojo.dto.RetrievalOptions;
+import com.rag.ragbackend.pojo.dto.RetrievedChunk;
+import com.rag.ragbackend.service.RerankService;
+import com.rag.ragbackend.utils.TokenEstimator;
+import com.rag.ragbackend.utils.VectorUtil;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @Description MMR（最大边际相关性）重排：综合排名第一的 chunk 先入选，之后每次选
+ * λ × 与问题的相似度 − (1 − λ) × 与已选 chunk 的最大相似度 最高的候选；
+ * 与已选 chunk 向量相似度或 shingle 重合度过高的视为重复直接丢弃，放不进剩余 token 预算的跳过、继续尝试更短的
+ * @Version 1.0.0
+ * @Date 2026-10-18 20:30
+ * @Author by zjh
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MmrRerankServiceImpl implements RerankService {
+
+    private final RetrievalConfig retrievalConfig;
+
+    @Override
+    public List<RetrievedChunk> rerank(float[] questionVector, List<RetrievedChunk> candidates, RetrievalOptions options) {
+        int n = candidates.size();
+        List<RetrievedChunk> selected = new ArrayList<>(options.getTopK());
+        if (n == 0) {
+            return selected;
+        }
+        double lambda = retrievalConfig.getMmrLambda();
+        float[][] vectors = new float[n][];
+        List<Set<Integer>> shingles = new ArrayList<>(n);
+        int[] tokens = new int[n];
+        for (int i = 0; i < n; i++) {
+            RetrievedChunk chunk = candidates.get(i);
+            vectors[i] = chunk.embedding() == null ? null : VectorUtil.normalize(chunk.embedding());
+            String text = chunk.text() == null ? "" : chunk.text();
+            shingles.add(shingles(text, retrievalConfig.getShingleSize()));
+            tokens[i] = TokenEstimator.estimate(text);
+        }
+
+        // 与已选 chunk 的最大相似度，每选入一个增量更新
+        double[] redundancy = new double[n];
+        boolean[] done = new boolean[n];
+        List<Integer> picked = new ArrayList<>(options.getTopK());
+        int budget = options.getMaxContextTokens();
+        int used = 0;
+        int duplicates = 0;
+        while (selected.size() < options.getTopK()) {
+            int best = -1;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                if (done[i]) {
+                    continue;
+                }
+                // 第一个直接取综合排名第一的（可能是 BM25 精确命中），之后按 MMR
+                double score = picked.isEmpty() ? -i : lambda * candidates.get(i).score() - (1 - lambda) * redundancy[i];
+                if (score > bestScore) {
+                    best = i;
+                    bestScore = score;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            done[best] = true;
+            if (isDuplicate(best, picked, vectors, shingles)) {
+                duplicates++;
+                continue;
+            }
+            // 第一个 chunk 总是保留；之后放不下的跳过，继续尝试其他候选填满预算
+            if (!picked.isEmpty() && used + tokens[best] > budget) {
+                continue;
+            }
+            picked.add(best);
+            selected.add(candidates.get(best));
+            used += tokens[best];
+            if (vectors[best] != null) {
+                for (int i = 0; i < n; i++) {
+                    if (!done[i] && vectors[i] != null) {
+                        redundancy[i] = Math.max(redundancy[i], VectorUtil.dot(vectors[i], vectors[best]));
+                    }
+                }
+            }
+        }
+        log.debug("重排完成, 候选 {} 个, 去重 {} 个, 入选 {} 个, 约 {} token", n, duplicates, selected.size(), used);
+        return selected;
+    }
+
+    private boolean isDuplicate(int candidate, List<Integer> picked, float[][] vectors, List<Set<Integer>> shingles) {
+        for (int p : picked) {
+            if (vectors[candidate] != null && vectors[p] != null
+                    && VectorUtil.dot(vectors[candidate], vectors[p]) >= retrievalConfig.getDuplicateSimilarity()) {
+                return true;
+            }
+            if (jaccard(shingles.get(candidate), shingles.get(p)) >= retrievalConfig.getDuplicateJaccard()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** 去掉空白后的字符 shingle 哈希集合 */
+    private static Set<Integer> shingles(String text, int size) {
+        StringBuilder compact = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                compact.append(c);
+            }
+        }
+        Set<Integer> set = new HashSet<>();
+        if (compact.length() <= size) {
+            set.add(compact.toString().hashCode());
+            return set;
+        }
+        for (int i = 0; i + size <= compact.length(); i++) {
+            set.add(compact.substring(i, i + size).hashCode());
+        }
+        return set;
+    }
+
+    private static double jaccard(Set<Integer> a, Set<Integer> b) {
+        if (a.isEmpty() || b.isEmpty()) {
+            return 0;
+        }
+        Set<Integer> small = a.size() <= b.size() ? a : b;
+        Set<Integer> large = small == a ? b : a;
+        int common = 0;
+        for (Integer h : small) {
+            if (large.contains(h)) {
+                common++;
+            }
+        }
+        return (double) common / (a.size() + b.size() - common);
+    }
+}
@@ -0,0 +1,162 @@
+package com.rag.ragbackend.service.impl;
+
+import com.rag.ragbackend.config.RetrievalConfig;
+import com.rag.ragbackend.manager.Bm25Index;
+import com.rag.ragbackend.pojo.dto.RetrievalOptions;
+import com.rag.ragbackend.pojo.dto.RetrievedChunk;
+import com.rag.ragbackend.service.ChromaService;
+import com.rag.ragbackend.service.RerankService;
+import com.rag.ragbackend.service.RetrievalService;
+import com.rag.ragbackend.utils.VectorUtil;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * @Description 检索实现：BM25 与向量检索各过量召回 topK × fetchFactor 个候选并行执行，倒数排名融合（RRF）后应用
+ * 绝对阈值（minScore）与相对截断（低于最高分 × relativeCutoff 的丢弃），再交给 RerankService 做多样性重排、
+ * 去重和 token 预算挑选。BM25 强命中（排名在 topK 内且得分不低于 BM25 最高分 × lexicalRelativeCutoff）的 chunk
+ * 不受相似度阈值限制（精确匹配的型号、错误码等），其余 BM25 命中与向量结果一样按相似度截断
+ * @Version 1.0.0
+ * @Date 2026-10-18 17:40
+ * @Author by zjh
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RetrievalServiceImpl implements RetrievalService {
+
+    private final ChromaService chromaService;
+    private final RetrievalConfig retrievalConfig;
+    private final Bm25Index bm25Index;
+    private final Executor retrievalExecutor;
+    private final RerankService rerankService;
+
+    @Override
+    public RetrievalOptions resolve(RetrievalOptions options) {
+        return retrievalConfig.resolve(options);
+    }
+
+    @Override
+    public List<RetrievedChunk> retrieve(String question, float[] questionVector, RetrievalOptions options) {
+        RetrievalOptions resolved = resolve(options);
+        int fetch = resolved.getTopK() * Math.max(1, retrievalConfig.getFetchFactor());
+        // BM25 在检索线程池上执行，与向量检索（网络 IO）重叠，不增加总耗时
+        CompletableFuture<List<Bm25Index.Hit>> lexical = CompletableFuture
+                .supplyAsync(() -> bm25Index.search(question, fetch), retrievalExecutor)
+                .exceptionally(e -> {
+                    log.warn("BM25 检索失败，仅使用向量检索", e);
+                    return List.of();
+                });
+        List<RetrievedChunk> vector = chromaService.search(questionVector, resolved.withTopK(fetch));
+        return select(vector, lexical.join(), questionVector, resolved);
+    }
+
+    @Override
+    public Mono<List<RetrievedChunk>> retrieveAsync(String question, float[] questionVector, RetrievalOptions options) {
+        RetrievalOptions resolved = resolve(options);
+        int fetch = resolved.getTopK() * Math.max(1, retrievalConfig.getFetchFactor());
+        Mono<List<Bm25Index.Hit>> lexical = Mono.fromCallable(() -> bm25Index.search(question, fetch))
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(e -> {
+                    log.warn("BM25 检索失败，仅使用向量检索", e);
+                    return Mono.just(List.of());
+                });
+        return Mono.zip(chromaService.searchAsync(questionVector, resolved.withTopK(fetch)), lexical)
+                // 融合时可能回向量库补取 BM25 独有的 chunk（同步调用），与重排一起放到 boundedElastic
+                .publishOn(Schedulers.boundedElastic())
+                .map(hits -> select(hits.getT1(), hits.getT2(), questionVector, resolved));
+    }
+
+    private List<RetrievedChunk> select(List<RetrievedChunk> vector, List<Bm25Index.Hit> lexicalHits,
+                                        float[] questionVector, RetrievalOptions resolved) {
+        List<Candidate> candidates = fuse(vector, lexicalHits, questionVector, resolved);
+        List<RetrievedChunk> selected = rerankService.rerank(questionVector, applyFloor(candidates, resolved), resolved);
+        log.debug("检索完成, 向量召回 {} 个, BM25 召回 {} 个, 保留 {} 个",
+                vector.size(), lexicalHits.size(), selected.size());
+        return selected;
+    }
+
+    /** lexical 为 BM25 强命中，不受相似度阈值限制 */
+    private record Candidate(RetrievedChunk chunk, boolean lexical) {
+    }
+
+    /**
+     * 倒数排名融合：两路结果按各自排名计分相加后排序。只在 BM25 中出现的 chunk 回向量库取文本与向量，
+     * 按请求的过滤条件过滤，并计算与问题的余弦相似度
+     */
+    private List<Candidate> fuse(List<RetrievedChunk> vector, List<Bm25Index.Hit> lexicalHits,
+                                 float[] questionVector, RetrievalOptions options) {
+        if (lexicalHits.isEmpty()) {
+            return vector.stream().map(chunk -> new Candidate(chunk, false)).toList();
+        }
+        int k = retrievalConfig.getRrfK();
+        Map<String, Double> fused = new HashMap<>();
+        Map<String, RetrievedChunk> chunks = new LinkedHashMap<>();
+        for (int rank = 0; rank < vector.size(); rank++) {
+            RetrievedChunk chunk = vector.get(rank);
+            chunks.put(chunk.id(), chunk);
+            fused.merge(chunk.id(), 1.0 / (k + rank + 1), Double::sum);
+        }
+        // 常见的中文二元组几乎每个 chunk 都能命中，只有排名靠前且得分接近最高分的 BM25 命中才豁免相似度阈值
+        Set<String> lexicalIds = new HashSet<>();
+        double lexicalFloor = lexicalHits.get(0).score() * retrievalConfig.getLexicalRelativeCutoff();
+        List<String> missing = new ArrayList<>();
+        for (int rank = 0; rank < lexicalHits.size(); rank++) {
+            Bm25Index.Hit hit = lexicalHits.get(rank);
+            String id = hit.id();
+            if (rank < options.getTopK() && hit.score() >= lexicalFloor) {
+                lexicalIds.add(id);
+            }
+            fused.merge(id, 1.0 / (k + rank + 1), Double::sum);
+            if (!chunks.containsKey(id)) {
+                missing.add(id);
+            }
+        }
+        for (RetrievedChunk chunk : chromaService.getByIds(missing)) {
+            if (!options.matches(chunk.metadata())) {
+                continue;
+            }
+            double score = chunk.embedding() == null ? 0 : VectorUtil.cosine(questionVector, chunk.embedding());
+            chunks.put(chunk.id(), new RetrievedChunk(chunk.id(), chunk.text(), chunk.metadata(), score, chunk.embedding()));
+        }
+
+        List<Candidate> candidates = new ArrayList<>(chunks.size());
+        for (RetrievedChunk chunk : chunks.values()) {
+            candidates.add(new Candidate(chunk, lexicalIds.contains(chunk.id())));
+        }
+        candidates.sort((a, b) -> Double.compare(fused.get(b.chunk().id()), fused.get(a.chunk().id())));
+        return candidates;
+    }
+
+    /** 过滤掉低于相似度阈值的候选，保持融合排名顺序 */
+    private static List<RetrievedChunk> applyFloor(List<Candidate> candidates, RetrievalOptions options) {
+        List<RetrievedChunk> kept = new ArrayList<>(candidates.size());
+        if (candidates.isEmpty()) {
+            return kept;
+        }
+        double top = candidates.stream().mapToDouble(c -> c.chunk().score()).max().orElse(0);
+        double floor = options.getMinScore();
+        if (top > 0 && options.getRelativeCutoff() > 0) {
+            floor = Math.max(floor, top * options.getRelativeCutoff());
+        }
+        for (Candidate candidate : candidates) {
+            if (candidate.lexical() || candidate.chunk().score() >= floor) {
+                kept.add(candidate.chunk());
+            }
+        }
+        return kept;
+    }
+}
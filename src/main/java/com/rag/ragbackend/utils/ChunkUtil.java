@@ -5,7 +5,11 @@ import java.util.List;
 
 public class ChunkUtil {
 
-    /** 按长度切 chunk，可调  */
+    /**
+     * 按长度切 chunk，可调
+     * @deprecated 会复制整篇文档并在句子中间截断，入库请使用 {@link com.rag.ragbackend.utils.chunk.Chunker}
+     */
+    @Deprecated
     public static List<String> split(String text, int maxLen) {
         List<String> chunks = new ArrayList<>();
         text = text.trim();
@@ -0,0 +1,150 @@
+package com.rag.ragbackend.utils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @Description 按问题抽取句子的上下文压缩：
+ * - chunk 按句末标点（。！？；!?; 以及换行、英文句点加空白）切成句子
+ * - 句子得分 = 命中的问题词 IDF 之和 / (1 + ln(句子词数))，IDF 在本次所有句子上统计，常见词权重低
+ * - 同分时排名靠前的 chunk、chunk 内靠前的句子优先
+ * - 按得分从高到低放入 token 预算，输出时恢复原文顺序，同一 chunk 内不相邻的句子之间用 … 连接
+ * - 没有任何句子命中问题词时，按 chunk 排名取各 chunk 的开头句子
+ * @Version 1.0.0
+ * @Date 2026-10-18 21:00
+ * @Author by zjh
+ */
+public class ExtractiveCompressor {
+
+    private ExtractiveCompressor() {
+    }
+
+    private record Sentence(int chunk, int index, String text, List<String> tokens, int cost) {
+    }
+
+    /**
+     * chunks 按检索排名排序，返回不超过 budget token 的上下文（至少包含一个句子，单句超长时硬切）
+     */
+    public static String compress(String question, List<String> chunks, int budget) {
+        List<Sentence> sentences = new ArrayList<>();
+        for (int c = 0; c < chunks.size(); c++) {
+            List<String> parts = split(chunks.get(c));
+            for (int i = 0; i < parts.size(); i++) {
+                String text = parts.get(i);
+                sentences.add(new Sentence(c, i, text, LexicalTokenizer.tokenize(text), TokenEstimator.estimate(text)));
+            }
+        }
+        if (sentences.isEmpty()) {
+            return "";
+        }
+
+        Set<String> query = new HashSet<>(LexicalTokenizer.tokenize(question));
+        Map<String, Integer> df = new HashMap<>();
+        for (Sentence s : sentences) {
+            for (String token : new HashSet<>(s.tokens())) {
+                if (query.contains(token)) {
+                    df.merge(token, 1, Integer::sum);
+                }
+            }
+        }
+        int n = sentences.size();
+        double[] scores = new double[n];
+        boolean matched = false;
+        for (int i = 0; i < n; i++) {
+            Sentence s = sentences.get(i);
+            double score = 0;
+            for (String token : new HashSet<>(s.tokens())) {
+                Integer f = df.get(token);
+                if (f != null) {
+                    score += Math.log(1 + (double) n / f);
+                }
+            }
+            if (score > 0) {
+                matched = true;
+                scores[i] = score / (1 + Math.log(Math.max(1, s.tokens().size())));
+            }
+        }
+        if (!matched) {
+            // 与问题没有字面重合（同义表述等），退化为各 chunk 的开头句子
+            for (int i = 0; i < n; i++) {
+                scores[i] = 1.0 / (1 + sentences.get(i).index());
+            }
+        }
+
+        List<Integer> order = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            if (scores[i] > 0) {
+                order.add(i);
+            }
+        }
+        // 句子按 chunk 排名、句内位置依次加入，下标本身就是同分时的优先级
+        order.sort(Comparator.<Integer>comparingDouble(i -> -scores[i]).thenComparingInt(i -> i));
+
+        boolean[] picked = new boolean[n];
+        int used = 0;
+        for (int i : order) {
+            int cost = sentences.get(i).cost();
+            if (used + cost <= budget) {
+                picked[i] = true;
+                used += cost;
+            }
+        }
+        if (used == 0) {
+            // 最相关的句子本身超出预算，硬切
+            String first = sentences.get(order.get(0)).text();
+            return first.substring(0, TokenEstimator.indexOfBudget(first, 0, first.length(), budget));
+        }
+
+        StringBuilder out = new StringBuilder();
+        Sentence last = null;
+        for (int i = 0; i < n; i++) {
+            if (!picked[i]) {
+                continue;
+            }
+            Sentence s = sentences.get(i);
+            if (last != null) {
+                if (last.chunk() != s.chunk()) {
+                    out.append('\n');
+                } else if (last.index() + 1 != s.index()) {
+                    out.append('…');
+                }
+            }
+            out.append(s.text());
+            last = s;
+        }
+        return out.toString();
+    }
+
+    /** 按句末标点切句，标点保留在句尾，空白句丢弃 */
+    static List<String> split(String text) {
+        List<String> sentences = new ArrayList<>();
+        if (text == null) {
+            return sentences;
+        }
+        int start = 0;
+        int len = text.length();
+        for (int i = 0; i < len; i++) {
+            char c = text.charAt(i);
+            boolean end = c == '。' || c == '！' || c == '？' || c == '；' || c == '!' || c == '?' || c == ';' || c == '\n'
+                    || (c == '.' && (i + 1 == len || Character.isWhitespace(text.charAt(i + 1))));
+            if (end) {
+                add(sentences, text.substring(start, i + 1));
+                start = i + 1;
+            }
+        }
+        add(sentences, text.substring(start));
+        return sentences;
+    }
+
+    private static void add(List<String> sentences, String sentence) {
+        String trimmed = sentence.strip();
+        if (!trimmed.isEmpty()) {
+            sentences.add(trimmed);
+        }
+    }
+}
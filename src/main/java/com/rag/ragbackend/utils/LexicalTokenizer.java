@@ -0,0 +1,73 @@
+package com.rag.ragbackend.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * @Description BM25 用的分词：中日韩文字按相邻二元组（bigram）切分，单个字单独成词；
+ * 字母数字串整体小写成一个词，内部的 - _ . 保留（型号、错误码、API 名可以精确命中），同时拆出各部分
+ * @Version 1.0.0
+ * @Date 2026-10-18 19:40
+ * @Author by zjh
+ */
+public class LexicalTokenizer {
+
+    private LexicalTokenizer() {
+    }
+
+    public static List<String> tokenize(CharSequence text) {
+        List<String> tokens = new ArrayList<>();
+        int n = text.length();
+        int i = 0;
+        while (i < n) {
+            char c = text.charAt(i);
+            if (TokenEstimator.isCjk(c)) {
+                int end = i;
+                while (end < n && TokenEstimator.isCjk(text.charAt(end))) {
+                    end++;
+                }
+                if (end - i == 1) {
+                    tokens.add(String.valueOf(c));
+                } else {
+                    for (int j = i; j + 1 < end; j++) {
+                        tokens.add(text.subSequence(j, j + 2).toString());
+                    }
+                }
+                i = end;
+            } else if (Character.isLetterOrDigit(c)) {
+                int end = i + 1;
+                boolean compound = false;
+                while (end < n) {
+                    char d = text.charAt(end);
+                    if (Character.isLetterOrDigit(d) && !TokenEstimator.isCjk(d)) {
+                        end++;
+                    } else if (isJoiner(d) && end + 1 < n && Character.isLetterOrDigit(text.charAt(end + 1))
+                            && !TokenEstimator.isCjk(text.charAt(end + 1))) {
+                        compound = true;
+                        end++;
+                    } else {
+                        break;
+                    }
+                }
+                String word = text.subSequence(i, end).toString().toLowerCase(Locale.ROOT);
+                tokens.add(word);
+                if (compound) {
+                    for (String part : word.split("[-_.]")) {
+                        if (!part.isEmpty()) {
+                            tokens.add(part);
+                        }
+                    }
+                }
+                i = end;
+            } else {
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isJoiner(char c) {
+        return c == '-' || c == '_' || c == '.';
+    }
+}
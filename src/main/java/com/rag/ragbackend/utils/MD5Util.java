@@ -2,6 +2,7 @@ package com.rag.ragbackend.utils;
 
 import org.springframework.util.DigestUtils;
 
+import java.nio.charset.StandardCharsets;
 import java.util.UUID;
 
 /**
@@ -29,6 +30,13 @@ public class MD5Util {
         return DigestUtils.md5DigestAsHex(dataWithSalt.getBytes());
     }
 
+    /**
+     * MD5（不加盐），用于内容寻址：相同内容得到相同结果
+     */
+    public static String md5Hex(String rawData) {
+        return DigestUtils.md5DigestAsHex(rawData.getBytes(StandardCharsets.UTF_8));
+    }
+
 }
 
 
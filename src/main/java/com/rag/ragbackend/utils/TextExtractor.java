@@ -1,10 +1,16 @@
 package com.rag.ragbackend.utils;
 
+import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.text.PDFTextStripper;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
 
 public class TextExtractor {
 
@@ -26,4 +32,149 @@ public class TextExtractor {
             throw new RuntimeException("文本文件读取失败", e);
         }
     }
+
+    /**
+     * 按页区间流式读取 PDF：文档结构超出 maxMainMemoryBytes 的部分放到临时 scratch 文件，
+     * 每次只提取 pagesPerSegment 页的文本
+     */
+    public static TextSegments openPdf(InputStream in, int pagesPerSegment, long maxMainMemoryBytes) {
+        try {
+            PDDocument document = PDDocument.load(in, MemoryUsageSetting.setupMixed(maxMainMemoryBytes));
+            return new PdfSegments(document, Math.max(1, pagesPerSegment));
+        } catch (Exception e) {
+            throw new RuntimeException("PDF解析失败", e);
+        }
+    }
+
+    /**
+     * 同上，直接从文件随机读取，不需要先把流复制到 scratch 文件
+     */
+    public static TextSegments openPdf(File file, int pagesPerSegment, long maxMainMemoryBytes) {
+        try {
+            PDDocument document = PDDocument.load(file, MemoryUsageSetting.setupMixed(maxMainMemoryBytes));
+            return new PdfSegments(document, Math.max(1, pagesPerSegment));
+        } catch (Exception e) {
+            throw new RuntimeException("PDF解析失败", e);
+        }
+    }
+
+    /** 按固定字符数流式读取 txt/md */
+    public static TextSegments openText(InputStream in, int segmentChars) {
+        return new ReaderSegments(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)),
+                Math.max(1024, segmentChars));
+    }
+
+    private static class PdfSegments implements TextSegments {
+
+        private final PDDocument document;
+        private final PDFTextStripper stripper;
+        private final int pageCount;
+        private final int pagesPerSegment;
+        private int nextPage = 1;
+
+        PdfSegments(PDDocument document, int pagesPerSegment) throws IOException {
+            this.document = document;
+            this.stripper = new PDFTextStripper();
+            this.pageCount = document.getNumberOfPages();
+            this.pagesPerSegment = pagesPerSegment;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextPage <= pageCount;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int endPage = Math.min(pageCount, nextPage + pagesPerSegment - 1);
+            try {
+                stripper.setStartPage(nextPage);
+                stripper.setEndPage(endPage);
+                return stripper.getText(document);
+            } catch (IOException e) {
+                throw new RuntimeException("PDF解析失败，页码 " + nextPage + "-" + endPage, e);
+            } finally {
+                nextPage = endPage + 1;
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                document.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static class ReaderSegments implements TextSegments {
+
+        private final BufferedReader reader;
+        private final char[] buffer;
+        private String next;
+        private boolean eof;
+
+        ReaderSegments(BufferedReader reader, int segmentChars) {
+            this.reader = reader;
+            this.buffer = new char[segmentChars];
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !eof) {
+                next = read();
+            }
+            return next != null;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String segment = next;
+            next = null;
+            return segment;
+        }
+
+        private String read() {
+            try {
+                int n = 0;
+                while (n < buffer.length) {
+                    int r = reader.read(buffer, n, buffer.length - n);
+                    if (r < 0) {
+                        eof = true;
+                        break;
+                    }
+                    n += r;
+                }
+                if (n == 0) {
+                    return null;
+                }
+                // 不把代理对拆到两段里
+                if (!eof && Character.isHighSurrogate(buffer[n - 1])) {
+                    int low = reader.read();
+                    if (low < 0) {
+                        eof = true;
+                    } else {
+                        return new String(buffer, 0, n) + (char) low;
+                    }
+                }
+                return new String(buffer, 0, n);
+            } catch (IOException e) {
+                throw new RuntimeException("文本文件读取失败", e);
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                reader.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
 }
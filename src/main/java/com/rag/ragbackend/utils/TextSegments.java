@@ -0,0 +1,43 @@
+package com.rag.ragbackend.utils;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * @Description 按段读取的文档文本（PDF 按页区间、文本文件按固定字符数），
+ * 调用方逐段消费，峰值内存只与单段大小有关，与文件大小无关
+ * @Version 1.0.0
+ * @Date 2026-10-18 13:40
+ * @Author by zjh
+ */
+public interface TextSegments extends Iterator<String>, Closeable {
+
+    /** 单段文本，主要用于已在内存中的字符串 */
+    static TextSegments of(String text) {
+        return new TextSegments() {
+            private boolean consumed;
+
+            @Override
+            public boolean hasNext() {
+                return !consumed;
+            }
+
+            @Override
+            public String next() {
+                if (consumed) {
+                    throw new NoSuchElementException();
+                }
+                consumed = true;
+                return text;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Override
+    void close();
+}
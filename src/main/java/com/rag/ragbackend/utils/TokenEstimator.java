@@ -0,0 +1,83 @@
+package com.rag.ragbackend.utils;
+
+/**
+ * @Description 近似 token 计数，不依赖具体分词器
+ * - CJK 字符（汉字/假名/韩文）按 1 字 1 token 计
+ * - 连续的字母数字按每 4 个字符 1 token 计（向上取整）
+ * - 其余非空白符号各计 1 token，空白不计
+ * @Version 1.0.0
+ * @Date 2026-10-18 11:05
+ * @Author by zjh
+ */
+public class TokenEstimator {
+
+    private TokenEstimator() {
+    }
+
+    public static int estimate(CharSequence text) {
+        return text == null ? 0 : estimate(text, 0, text.length());
+    }
+
+    /** 统计 [from, to) 区间的 token 数 */
+    public static int estimate(CharSequence text, int from, int to) {
+        int tokens = 0;
+        int run = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (isCjk(c)) {
+                tokens += (run + 3) >> 2;
+                run = 0;
+                tokens++;
+            } else if (Character.isLetterOrDigit(c)) {
+                run++;
+            } else {
+                tokens += (run + 3) >> 2;
+                run = 0;
+                if (!Character.isWhitespace(c)) {
+                    tokens++;
+                }
+            }
+        }
+        return tokens + ((run + 3) >> 2);
+    }
+
+    /**
+     * 从 from 开始、token 数不超过 budget 的最远下标（不含），用于超长句子的硬切
+     */
+    public static int indexOfBudget(CharSequence text, int from, int to, int budget) {
+        int committed = 0;
+        int run = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            int nextCommitted = committed;
+            int nextRun = run;
+            if (isCjk(c)) {
+                nextCommitted += ((run + 3) >> 2) + 1;
+                nextRun = 0;
+            } else if (Character.isLetterOrDigit(c)) {
+                nextRun++;
+            } else {
+                nextCommitted += (run + 3) >> 2;
+                nextRun = 0;
+                if (!Character.isWhitespace(c)) {
+                    nextCommitted++;
+                }
+            }
+            if (nextCommitted + ((nextRun + 3) >> 2) > budget) {
+                return i;
+            }
+            committed = nextCommitted;
+            run = nextRun;
+        }
+        return to;
+    }
+
+    /** 是否为 CJK 字符 */
+    public static boolean isCjk(char c) {
+        return (c >= 0x4E00 && c <= 0x9FFF)    // CJK 统一表意文字
+                || (c >= 0x3400 && c <= 0x4DBF) // 扩展 A
+                || (c >= 0x3040 && c <= 0x30FF) // 平假名 / 片假名
+                || (c >= 0xAC00 && c <= 0xD7AF) // 韩文音节
+                || (c >= 0xF900 && c <= 0xFAFF); // 兼容表意文字
+    }
+}
@@ -0,0 +1,22 @@
+package com.rag.ragbackend.utils.chunk;
+
+import java.util.Iterator;
+
+/**
+ * @Description 切分引擎：以流式迭代器的方式在原文上产出 chunk 视图，
+ * 调用方按需消费，不需要一次性持有全部 chunk
+ * @Version 1.0.0
+ * @Date 2026-10-18 11:10
+ * @Author by zjh
+ */
+public interface Chunker {
+
+    Iterator<TextChunk> chunks(CharSequence text);
+
+    /**
+     * 对分段读取的文本切分，段与段之间的边界不会切断句子
+     */
+    default Iterator<TextChunk> chunks(Iterator<? extends CharSequence> segments) {
+        return new SegmentedChunkIterator(this, segments);
+    }
+}
@@ -0,0 +1,53 @@
+package com.rag.ragbackend.utils.chunk;
+
+import com.rag.ragbackend.utils.TokenEstimator;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * @Description 按固定字符数切分（与 ChunkUtil.split 行为一致），用于对比或兼容旧数据
+ * @Version 1.0.0
+ * @Date 2026-10-18 11:12
+ * @Author by zjh
+ */
+public class FixedLengthChunker implements Chunker {
+
+    private final int maxChars;
+
+    public FixedLengthChunker(int maxChars) {
+        if (maxChars <= 0) {
+            throw new IllegalArgumentException("maxChars must be positive");
+        }
+        this.maxChars = maxChars;
+    }
+
+    @Override
+    public Iterator<TextChunk> chunks(CharSequence text) {
+        int from = 0;
+        int to = text.length();
+        while (from < to && Character.isWhitespace(text.charAt(from))) from++;
+        while (to > from && Character.isWhitespace(text.charAt(to - 1))) to--;
+        int begin = from;
+        int limit = to;
+        return new Iterator<>() {
+            private int pos = begin;
+
+            @Override
+            public boolean hasNext() {
+                return pos < limit;
+            }
+
+            @Override
+            public TextChunk next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int end = Math.min(limit, pos + maxChars);
+                TextChunk chunk = new TextChunk(text, pos, end, TokenEstimator.estimate(text, pos, end));
+                pos = end;
+                return chunk;
+            }
+        };
+    }
+}
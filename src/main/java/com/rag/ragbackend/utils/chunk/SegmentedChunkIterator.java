@@ -0,0 +1,66 @@
+package com.rag.ragbackend.utils.chunk;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * @Description 跨段切分：逐段调用 Chunker，每段的最后一个 chunk 可能被段尾截断，
+ * 因此不直接产出，而是把它连同段尾剩余文本拼到下一段开头重新切分
+ * @Version 1.0.0
+ * @Date 2026-10-18 13:55
+ * @Author by zjh
+ */
+class SegmentedChunkIterator implements Iterator<TextChunk> {
+
+    private final Chunker chunker;
+    private final Iterator<? extends CharSequence> segments;
+
+    private CharSequence buffer = "";
+    private Iterator<TextChunk> current;
+    private TextChunk next;
+
+    SegmentedChunkIterator(Chunker chunker, Iterator<? extends CharSequence> segments) {
+        this.chunker = chunker;
+        this.segments = segments;
+        this.current = chunker.chunks(buffer);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == null) {
+            if (current.hasNext()) {
+                TextChunk chunk = current.next();
+                if (current.hasNext() || !segments.hasNext()) {
+                    next = chunk;
+                } else {
+                    refill(buffer.subSequence(chunk.start(), buffer.length()));
+                }
+            } else if (segments.hasNext()) {
+                refill("");
+            } else {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public TextChunk next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        TextChunk chunk = next;
+        next = null;
+        return chunk;
+    }
+
+    private void refill(CharSequence carry) {
+        CharSequence segment = segments.next();
+        if (carry.length() == 0) {
+            buffer = segment;
+        } else {
+            buffer = new StringBuilder(carry.length() + segment.length()).append(carry).append(segment);
+        }
+        current = chunker.chunks(buffer);
+    }
+}
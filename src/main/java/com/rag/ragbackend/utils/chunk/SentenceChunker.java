@@ -0,0 +1,247 @@
+package com.rag.ragbackend.utils.chunk;
+
+import com.rag.ragbackend.utils.TokenEstimator;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * @Description 按句子/段落边界切分，按 token 预算控制 chunk 大小，相邻 chunk 按整句重叠
+ * <p>
+ * 规则：
+ * 1. 以句子为最小单位累加，超出 maxTokens 前结束当前 chunk；
+ *    句末标点（。！？；!?; 以及后接空白的 .）为强边界，换行为弱边界，超预算时优先回退到强边界
+ * 2. 已达到 maxTokens / 2 且遇到段落边界（空行）时提前结束，不跨段落拼接
+ * 3. 因超预算结束时，下一个 chunk 从当前 chunk 末尾若干整句开始，重叠部分不超过 overlapTokens
+ * 4. 单句超过 maxTokens 时按 token 预算硬切，尽量落在空白或标点处
+ * @Version 1.0.0
+ * @Date 2026-10-18 11:20
+ * @Author by zjh
+ */
+public class SentenceChunker implements Chunker {
+
+    private final int maxTokens;
+    private final int overlapTokens;
+    private final int minTokens;
+
+    public SentenceChunker(int maxTokens, int overlapTokens) {
+        if (maxTokens <= 0) {
+            throw new IllegalArgumentException("maxTokens must be positive");
+        }
+        if (overlapTokens < 0 || overlapTokens >= maxTokens) {
+            throw new IllegalArgumentException("overlapTokens must be in [0, maxTokens)");
+        }
+        this.maxTokens = maxTokens;
+        this.overlapTokens = overlapTokens;
+        this.minTokens = maxTokens / 2;
+    }
+
+    @Override
+    public Iterator<TextChunk> chunks(CharSequence text) {
+        return new ChunkIterator(text);
+    }
+
+    private final class ChunkIterator implements Iterator<TextChunk> {
+
+        private final CharSequence text;
+        private final int length;
+        private int pos;
+        private TextChunk next;
+
+        // 当前 chunk 内各句子的起点、token 数与是否强边界结尾，跨 chunk 复用
+        private int[] unitStarts = new int[16];
+        private int[] unitTokens = new int[16];
+        private boolean[] unitStrong = new boolean[16];
+        private int unitCount;
+
+        ChunkIterator(CharSequence text) {
+            this.text = text;
+            this.length = text.length();
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                next = advance();
+            }
+            return next != null;
+        }
+
+        @Override
+        public TextChunk next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            TextChunk chunk = next;
+            next = null;
+            return chunk;
+        }
+
+        private TextChunk advance() {
+            int start = skipWhitespace(pos);
+            if (start >= length) {
+                pos = length;
+                return null;
+            }
+            unitCount = 0;
+            int tokens = 0;
+            int end = start;
+            int cursor = start;
+            // 因超预算而结束时，被拒绝的下一句的 token 数；-1 表示不是因超预算结束
+            int rejectedTokens = -1;
+            while (cursor < length) {
+                int unitEnd = unitEnd(cursor);
+                boolean strong = unitEnd > cursor && isTerminator(text.charAt(lastNonClosing(cursor, unitEnd)));
+                int unitTok = TokenEstimator.estimate(text, cursor, unitEnd);
+                if (tokens + unitTok > maxTokens) {
+                    if (unitCount == 0) {
+                        end = hardCut(cursor, unitEnd);
+                        tokens = TokenEstimator.estimate(text, cursor, end);
+                    } else {
+                        int k = lastStrongUnit();
+                        if (k >= 0 && k < unitCount - 1 && sumTokens(0, k + 1) >= minTokens) {
+                            end = unitStarts[k + 1];
+                            tokens = sumTokens(0, k + 1);
+                            unitCount = k + 1;
+                            unitTok = TokenEstimator.estimate(text, end, unitEnd);
+                        }
+                        rejectedTokens = unitTok;
+                    }
+                    break;
+                }
+                push(cursor, unitTok, strong);
+                tokens += unitTok;
+                end = unitEnd;
+                cursor = unitEnd;
+                if (tokens >= minTokens && isParagraphBreak(unitEnd)) {
+                    break;
+                }
+            }
+            pos = nextStart(end, rejectedTokens);
+            return new TextChunk(text, start, trimEnd(start, end), tokens);
+        }
+
+        /** 下一个 chunk 的起点：仅在超预算结束时回退若干整句作为重叠 */
+        private int nextStart(int end, int rejectedTokens) {
+            if (end >= length || rejectedTokens < 0 || overlapTokens == 0) {
+                return end;
+            }
+            int budget = Math.min(overlapTokens, maxTokens - rejectedTokens);
+            int acc = 0;
+            int candidate = end;
+            for (int i = unitCount - 1; i >= 1; i--) {
+                acc += unitTokens[i];
+                if (acc > budget) {
+                    break;
+                }
+                candidate = unitStarts[i];
+            }
+            return candidate;
+        }
+
+        /** 一个句子（或一行）的结束位置（不含） */
+        private int unitEnd(int from) {
+            for (int i = from; i < length; i++) {
+                char c = text.charAt(i);
+                if (c == '\n') {
+                    return i + 1;
+                }
+                if (isTerminator(c) && (c != '.' || i + 1 >= length || Character.isWhitespace(text.charAt(i + 1)))) {
+                    int j = i + 1;
+                    // 连续的句末标点与右引号、右括号归入本句
+                    while (j < length && (isTerminator(text.charAt(j)) || isClosing(text.charAt(j)))) {
+                        j++;
+                    }
+                    return j;
+                }
+            }
+            return length;
+        }
+
+        private int lastNonClosing(int from, int to) {
+            int i = to - 1;
+            while (i > from && (isClosing(text.charAt(i)) || Character.isWhitespace(text.charAt(i)))) {
+                i--;
+            }
+            return i;
+        }
+
+        /** 单句超长：按 token 预算截断，尽量回退到后半段的空白或标点处 */
+        private int hardCut(int from, int to) {
+            int cut = Math.max(from + 1, TokenEstimator.indexOfBudget(text, from, to, maxTokens));
+            int floor = from + (cut - from) / 2;
+            for (int i = cut - 1; i > floor; i--) {
+                char c = text.charAt(i);
+                if (Character.isWhitespace(c) || (!Character.isLetterOrDigit(c) && !TokenEstimator.isCjk(c))) {
+                    return i + 1;
+                }
+            }
+            return cut;
+        }
+
+        /** 空行视为段落边界 */
+        private boolean isParagraphBreak(int index) {
+            int newlines = index > 0 && text.charAt(index - 1) == '\n' ? 1 : 0;
+            for (int i = index; i < length && Character.isWhitespace(text.charAt(i)); i++) {
+                if (text.charAt(i) == '\n' && ++newlines >= 2) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private int lastStrongUnit() {
+            for (int i = unitCount - 1; i >= 0; i--) {
+                if (unitStrong[i]) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private int sumTokens(int from, int to) {
+            int sum = 0;
+            for (int i = from; i < to; i++) {
+                sum += unitTokens[i];
+            }
+            return sum;
+        }
+
+        private void push(int start, int tokens, boolean strong) {
+            if (unitCount == unitStarts.length) {
+                int size = unitCount * 2;
+                unitStarts = Arrays.copyOf(unitStarts, size);
+                unitTokens = Arrays.copyOf(unitTokens, size);
+                unitStrong = Arrays.copyOf(unitStrong, size);
+            }
+            unitStarts[unitCount] = start;
+            unitTokens[unitCount] = tokens;
+            unitStrong[unitCount] = strong;
+            unitCount++;
+        }
+
+        private int skipWhitespace(int from) {
+            while (from < length && Character.isWhitespace(text.charAt(from))) {
+                from++;
+            }
+            return from;
+        }
+
+        private int trimEnd(int start, int end) {
+            while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+                end--;
+            }
+            return end;
+        }
+    }
+
+    private static boolean isTerminator(char c) {
+        return c == '。' || c == '！' || c == '？' || c == '；' || c == '…'
+                || c == '!' || c == '?' || c == ';' || c == '.';
+    }
+
+    private static boolean isClosing(char c) {
+        return c == '”' || c == '’' || c == '」' || c == '』' || c == '）' || c == ')' || c == '"' || c == '\'' || c == '】';
+    }
+}
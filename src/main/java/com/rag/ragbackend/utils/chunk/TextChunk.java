@@ -0,0 +1,33 @@
+package com.rag.ragbackend.utils.chunk;
+
+/**
+ * 原文 [start, end) 区间的只读视图，不复制原文；
+ * 只有在调用 toString() 时才会生成该 chunk 自己的字符串
+ *
+ * @param source 原文
+ * @param start  起始下标（含）
+ * @param end    结束下标（不含）
+ * @param tokens 估算 token 数
+ */
+public record TextChunk(CharSequence source, int start, int end, int tokens) implements CharSequence {
+
+    @Override
+    public int length() {
+        return end - start;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return source.charAt(start + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        return source.subSequence(start + from, start + to);
+    }
+
+    @Override
+    public String toString() {
+        return source.subSequence(start, end).toString();
+    }
+}
@@ -0,0 +1,186 @@
+package com.rag.ragbackend.manager;
+
+import com.rag.ragbackend.config.Bm25Config;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @Description Bm25Index：删除并整理后的得分与只含剩余文档的新索引一致，快照写入后重新加载结果不变，并发写快照不互相破坏
+ * @Version 1.0.0
+ * @Date 2026-10-19 10:30
+ * @Author by zjh
+ */
+class Bm25IndexTest {
+
+    private static final String[] WORDS = {
+            "embedding", "vector", "chunk", "retrieval", "rerank", "prompt", "stream", "token",
+            "RX-2048", "E1027", "firmware", "tenant", "检索增强", "向量检索", "错误码", "断点续传",
+    };
+
+    private static final List<String> QUERIES = List.of(
+            "vector retrieval", "RX-2048 firmware", "E1027 错误码", "2048", "向量检索 rerank", "断点续传 stream token");
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void removeAndCompactMatchesFreshIndex() {
+        List<Document> documents = documents(300, 1);
+        Bm25Index index = index(0.3);
+        index.addAll(documents);
+        // 删除 2/5，超过整理阈值，触发整理重新编号
+        List<String> removed = new ArrayList<>();
+        List<Document> kept = new ArrayList<>();
+        for (int i = 0; i < documents.size(); i++) {
+            if (i % 5 < 2) {
+                removed.add(documents.get(i).getId());
+            } else {
+                kept.add(documents.get(i));
+            }
+        }
+        index.removeAll(removed);
+        assertEquals(kept.size(), index.size());
+
+        Bm25Index fresh = index(0.3);
+        fresh.addAll(kept);
+        for (String query : QUERIES) {
+            assertSameHits(fresh.search(query, 1000), index.search(query, 1000), query);
+        }
+        // 整理后继续写入，新序号接在整理后的序号之后
+        List<Document> more = documents(50, 2);
+        index.addAll(more);
+        fresh.addAll(more);
+        for (String query : QUERIES) {
+            assertSameHits(fresh.search(query, 1000), index.search(query, 1000), query);
+        }
+    }
+
+    @Test
+    void removedDocumentsAreNotReturnedBeforeCompaction() {
+        List<Document> documents = documents(100, 3);
+        Bm25Index index = index(1.0);
+        index.addAll(documents);
+        List<String> removed = documents.subList(0, 10).stream().map(Document::getId).toList();
+        index.removeAll(removed);
+        assertEquals(90, index.size());
+        for (String query : QUERIES) {
+            for (Bm25Index.Hit hit : index.search(query, 100)) {
+                assertFalse(removed.contains(hit.id()), "返回了已删除的文档 " + hit.id());
+            }
+        }
+    }
+
+    @Test
+    void replacingDocumentKeepsOneCopy() {
+        Bm25Index index = index(0.3);
+        index.addAll(List.of(new Document("doc-1", "vector retrieval", Map.of())));
+        index.addAll(List.of(new Document("doc-1", "firmware E1027", Map.of())));
+        assertEquals(1, index.size());
+        assertTrue(index.search("vector", 10).isEmpty());
+        assertEquals("doc-1", index.search("E1027", 10).get(0).id());
+    }
+
+    @Test
+    void snapshotRoundTrip() {
+        List<Document> documents = documents(200, 4);
+        Bm25Index index = index(0.3);
+        index.addAll(documents);
+        // 未达整理阈值，快照里带着墓碑
+        index.removeAll(documents.subList(0, 20).stream().map(Document::getId).toList());
+        index.save();
+        assertTrue(Files.exists(dir.resolve("bm25.snapshot")));
+
+        Bm25Index loaded = index(0.3);
+        loaded.load();
+        assertEquals(index.size(), loaded.size());
+        for (String query : QUERIES) {
+            assertSameHits(index.search(query, 1000), loaded.search(query, 1000), query);
+        }
+        // 加载后的索引可以继续删除、整理
+        List<String> removed = documents.subList(20, 80).stream().map(Document::getId).toList();
+        index.removeAll(removed);
+        loaded.removeAll(removed);
+        for (String query : QUERIES) {
+            assertSameHits(index.search(query, 1000), loaded.search(query, 1000), query);
+        }
+    }
+
+    @Test
+    void concurrentSavesLeaveOneValidSnapshot() throws Exception {
+        Bm25Index index = index(0.3);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int round = 0; round < 8; round++) {
+                List<Document> batch = documents(50, 10 + round);
+                futures.add(pool.submit(() -> {
+                    index.addAll(batch);
+                    index.save();
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        index.save();
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(List.of(dir.resolve("bm25.snapshot")), files.toList(), "残留临时文件");
+        }
+        Bm25Index loaded = index(0.3);
+        loaded.load();
+        assertEquals(400, loaded.size());
+        for (String query : QUERIES) {
+            assertSameHits(index.search(query, 1000), loaded.search(query, 1000), query);
+        }
+    }
+
+    private Bm25Index index(double compactRatio) {
+        Bm25Config config = new Bm25Config();
+        config.setSnapshotPath(dir.resolve("bm25.snapshot").toString());
+        config.setCompactRatio(compactRatio);
+        return new Bm25Index(config, null, Runnable::run);
+    }
+
+    /** topK 取足够大，返回全部命中，避免同分文档在截断处的顺序差异 */
+    private static void assertSameHits(List<Bm25Index.Hit> expected, List<Bm25Index.Hit> actual, String query) {
+        assertEquals(expected.size(), actual.size(), query);
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).score(), actual.get(i).score(), 1e-4, query + " 第 " + i + " 个得分");
+        }
+        assertEquals(expected.stream().map(Bm25Index.Hit::id).sorted().toList(),
+                actual.stream().map(Bm25Index.Hit::id).sorted().toList(), query);
+    }
+
+    /** 固定种子的文档，每篇 5~40 个词 */
+    private static List<Document> documents(int count, long seed) {
+        Random random = new Random(seed);
+        List<Document> documents = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int length = 5 + random.nextInt(36);
+            StringBuilder text = new StringBuilder();
+            for (int w = 0; w < length; w++) {
+                text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            documents.add(new Document("doc-" + seed + "-" + i, text.toString(), Map.of()));
+        }
+        return documents;
+    }
+}
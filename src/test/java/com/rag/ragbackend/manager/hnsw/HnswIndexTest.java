@@ -0,0 +1,149 @@
+package com.rag.ragbackend.manager.hnsw;
+
+import com.rag.ragbackend.utils.VectorUtil;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @Description HnswIndex：与暴力检索对比召回率，删除节点不出现在结果中，checkpoint 后重新打开并重放未 checkpoint 的节点
+ * @Version 1.0.0
+ * @Date 2026-10-19 10:30
+ * @Author by zjh
+ */
+class HnswIndexTest {
+
+    private static final int DIM = 32;
+    private static final int M = 16;
+    private static final int EF_CONSTRUCTION = 100;
+    private static final int EF_SEARCH = 64;
+    private static final int K = 10;
+    private static final int QUERIES = 50;
+    private static final double MIN_RECALL = 0.9;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void recallAgainstBruteForce() throws IOException {
+        float[][] data = vectors(2000, 1);
+        try (HnswIndex index = new HnswIndex(dir, DIM, M, EF_CONSTRUCTION)) {
+            insert(index, data, 0, data.length);
+            assertEquals(data.length, index.size());
+            double recall = recall(index, data, vectors(QUERIES, 2), node -> true);
+            assertTrue(recall >= MIN_RECALL, "召回率 " + recall);
+        }
+    }
+
+    @Test
+    void deletedNodesAreSkipped() throws IOException {
+        float[][] data = vectors(2000, 3);
+        try (HnswIndex index = new HnswIndex(dir, DIM, M, EF_CONSTRUCTION)) {
+            insert(index, data, 0, data.length);
+            for (int node = 0; node < data.length; node += 3) {
+                index.markDeleted(node);
+            }
+            IntPredicate live = node -> node % 3 != 0;
+            float[][] queries = vectors(QUERIES, 4);
+            for (float[] query : queries) {
+                for (int node : index.search(query, K, EF_SEARCH, null).nodes()) {
+                    assertTrue(live.test(node), "返回了已删除的节点 " + node);
+                }
+            }
+            double recall = recall(index, data, queries, live);
+            assertTrue(recall >= MIN_RECALL, "删除后召回率 " + recall);
+        }
+    }
+
+    @Test
+    void reloadAfterCheckpoint() throws IOException {
+        float[][] data = vectors(1500, 5);
+        int checkpointed = 1000;
+        try (HnswIndex index = new HnswIndex(dir, DIM, M, EF_CONSTRUCTION)) {
+            insert(index, data, 0, checkpointed);
+            index.markDeleted(7);
+            index.checkpoint();
+            // checkpoint 之后写入的节点：向量和层数已在映射文件中，图结构要在重启时重放
+            insert(index, data, checkpointed, data.length);
+        }
+        try (HnswIndex index = new HnswIndex(dir, DIM, M, EF_CONSTRUCTION)) {
+            assertEquals(checkpointed, index.checkpointedSize());
+            assertTrue(index.isDeleted(7));
+            for (int node = checkpointed; node < data.length; node++) {
+                index.insert(node);
+            }
+            assertEquals(data.length, index.size());
+            for (int node = 0; node < data.length; node += 97) {
+                assertTrue(Arrays.equals(data[node], index.vector(node)), "节点 " + node + " 的向量与写入时不一致");
+            }
+            float[][] queries = vectors(QUERIES, 6);
+            for (float[] query : queries) {
+                for (int node : index.search(query, K, EF_SEARCH, null).nodes()) {
+                    assertFalse(node == 7, "返回了已删除的节点");
+                }
+            }
+            double recall = recall(index, data, queries, node -> node != 7);
+            assertTrue(recall >= MIN_RECALL, "重新打开后召回率 " + recall);
+        }
+    }
+
+    private static void insert(HnswIndex index, float[][] data, int from, int to) throws IOException {
+        for (int node = from; node < to; node++) {
+            index.set(node, data[node], index.randomLevel());
+            index.insert(node);
+        }
+    }
+
+    /** 所有查询的平均 recall@K，暴力检索只在 live 节点中取 top K */
+    private static double recall(HnswIndex index, float[][] data, float[][] queries, IntPredicate live) {
+        int found = 0;
+        for (float[] query : queries) {
+            Set<Integer> expected = bruteForce(data, query, live);
+            for (int node : index.search(query, K, EF_SEARCH, null).nodes()) {
+                if (expected.contains(node)) {
+                    found++;
+                }
+            }
+        }
+        return (double) found / (queries.length * K);
+    }
+
+    private static Set<Integer> bruteForce(float[][] data, float[] query, IntPredicate live) {
+        Integer[] order = new Integer[data.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Float.compare(VectorUtil.dot(query, data[b]), VectorUtil.dot(query, data[a])));
+        Set<Integer> top = new HashSet<>();
+        for (int i = 0; i < order.length && top.size() < K; i++) {
+            if (live.test(order[i])) {
+                top.add(order[i]);
+            }
+        }
+        return top;
+    }
+
+    /** 固定种子的归一化随机向量 */
+    private static float[][] vectors(int count, long seed) {
+        Random random = new Random(seed);
+        float[][] out = new float[count][DIM];
+        for (int i = 0; i < count; i++) {
+            for (int d = 0; d < DIM; d++) {
+                out[i][d] = (float) random.nextGaussian();
+            }
+            out[i] = VectorUtil.normalize(out[i]);
+        }
+        return out;
+    }
+}
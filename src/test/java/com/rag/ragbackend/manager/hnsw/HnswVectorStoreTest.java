@@ -0,0 +1,136 @@
+package com.rag.ragbackend.manager.hnsw;
+
+import com.rag.ragbackend.pojo.dto.RetrievalOptions;
+import com.rag.ragbackend.pojo.dto.RetrievedChunk;
+import com.rag.ragbackend.utils.VectorUtil;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @Description HnswVectorStore 带过滤条件的检索：按内存中的可过滤字段求值，重启重放后结果不变，按条件删除
+ * @Version 1.0.0
+ * @Date 2026-10-19 14:10
+ * @Author by zjh
+ */
+class HnswVectorStoreTest {
+
+    private static final int DIM = 16;
+    private static final int DOCS = 600;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void filteredSearchReturnsOnlyMatchingChunks() throws IOException {
+        try (HnswVectorStore store = open()) {
+            write(store);
+            Filter.Expression filter = and(eq(RetrievalOptions.TENANT, "t1"), eq(RetrievalOptions.tagKey("faq"), true));
+            for (float[] query : vectors(20, 7)) {
+                List<RetrievedChunk> hits = store.search(query, 10, filter);
+                assertEquals(10, hits.size());
+                for (RetrievedChunk hit : hits) {
+                    assertEquals("t1", hit.metadata().get(RetrievalOptions.TENANT));
+                    assertEquals(true, hit.metadata().get(RetrievalOptions.tagKey("faq")));
+                }
+            }
+        }
+    }
+
+    @Test
+    void filterFieldsAreRebuiltOnReplay() throws IOException {
+        Filter.Expression filter = new Filter.Expression(Filter.ExpressionType.IN,
+                new Filter.Key(RetrievalOptions.DOC_ID), new Filter.Value(List.of("doc-3", "doc-5")));
+        float[][] queries = vectors(10, 9);
+        List<List<String>> before = new ArrayList<>();
+        try (HnswVectorStore store = open()) {
+            write(store);
+            for (float[] query : queries) {
+                before.add(ids(store.search(query, 5, filter)));
+            }
+        }
+        try (HnswVectorStore store = open()) {
+            for (int i = 0; i < queries.length; i++) {
+                List<RetrievedChunk> hits = store.search(queries[i], 5, filter);
+                assertEquals(before.get(i), ids(hits));
+                for (RetrievedChunk hit : hits) {
+                    assertTrue(List.of("doc-3", "doc-5").contains(hit.metadata().get(RetrievalOptions.DOC_ID)));
+                }
+            }
+        }
+    }
+
+    @Test
+    void deleteByFilter() throws IOException {
+        try (HnswVectorStore store = open()) {
+            write(store);
+            store.delete(eq(RetrievalOptions.TENANT, "t2"));
+            assertEquals(DOCS - DOCS / 3, store.size());
+            for (float[] query : vectors(10, 11)) {
+                for (RetrievedChunk hit : store.search(query, 20, null)) {
+                    assertFalse("t2".equals(hit.metadata().get(RetrievalOptions.TENANT)));
+                }
+            }
+        }
+    }
+
+    private HnswVectorStore open() throws IOException {
+        return new HnswVectorStore(null, dir, DIM, 16, 100, 64, 100);
+    }
+
+    /** 租户 t0/t1/t2 轮换，每 10 个 chunk 一个文档，每 4 个带 faq 标签，另带一个不参与过滤的大字段 */
+    private static void write(HnswVectorStore store) {
+        float[][] vectors = vectors(DOCS, 1);
+        List<Document> docs = new ArrayList<>(DOCS);
+        List<float[]> embeddings = new ArrayList<>(DOCS);
+        for (int i = 0; i < DOCS; i++) {
+            Map<String, Object> metadata = new HashMap<>();
+            metadata.put(RetrievalOptions.DOC_ID, "doc-" + i / 10);
+            metadata.put(RetrievalOptions.TENANT, "t" + i % 3);
+            if (i % 4 == 0) {
+                metadata.put(RetrievalOptions.tagKey("faq"), true);
+            }
+            metadata.put("source", "manual-" + i + ".pdf");
+            docs.add(new Document("chunk-" + i, "text " + i, metadata));
+            embeddings.add(vectors[i]);
+        }
+        store.add(docs, embeddings);
+    }
+
+    private static Filter.Expression eq(String key, Object value) {
+        return new Filter.Expression(Filter.ExpressionType.EQ, new Filter.Key(key), new Filter.Value(value));
+    }
+
+    private static Filter.Expression and(Filter.Expression left, Filter.Expression right) {
+        return new Filter.Expression(Filter.ExpressionType.AND, left, right);
+    }
+
+    private static List<String> ids(List<RetrievedChunk> chunks) {
+        return chunks.stream().map(RetrievedChunk::id).toList();
+    }
+
+    private static float[][] vectors(int count, long seed) {
+        Random random = new Random(seed);
+        float[][] out = new float[count][DIM];
+        for (int i = 0; i < count; i++) {
+            for (int d = 0; d < DIM; d++) {
+                out[i][d] = (float) random.nextGaussian();
+            }
+            out[i] = VectorUtil.normalize(out[i]);
+        }
+        return out;
+    }
+}